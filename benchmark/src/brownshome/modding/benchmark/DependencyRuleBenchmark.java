@@ -0,0 +1,59 @@
+package brownshome.modding.benchmark;
+
+import brownshome.modding.util.DependencyRules;
+import brownshome.modding.util.SemanticModVersion;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DependencyRules#meets} for each rule, over generated pairs of required and candidate versions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DependencyRuleBenchmark {
+	@Param({ "EXACTLY", "NEWER", "NEWER_OR_EQUAL", "OLDER", "OLDER_OR_EQUAL", "EXCLUDE", "COMPATIBLE" })
+	DependencyRules rule;
+
+	@Param({ "1000" })
+	int count;
+
+	private SemanticModVersion[] required;
+	private SemanticModVersion[] candidates;
+
+	@Setup
+	public void createVersions() {
+		var random = new Random(42);
+
+		required = new SemanticModVersion[count];
+		candidates = new SemanticModVersion[count];
+
+		for (int i = 0; i < count; i++) {
+			required[i] = randomVersion(random);
+			candidates[i] = randomVersion(random);
+		}
+	}
+
+	private static SemanticModVersion randomVersion(Random random) {
+		var preRelease = random.nextInt(4) == 0 ? "beta." + random.nextInt(3) : null;
+		return new SemanticModVersion(random.nextInt(3), random.nextInt(3), random.nextInt(3), preRelease);
+	}
+
+	@Benchmark
+	public int meets() {
+		int result = 0;
+
+		for (int i = 0; i < count; i++) {
+			if (rule.meets(required[i], candidates[i])) {
+				result++;
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,102 @@
+package brownshome.modding.benchmark;
+
+import brownshome.modding.ModLoadingException;
+import brownshome.modding.dependencygraph.SelectionStrategy;
+import brownshome.modding.dependencygraph.VersionSelector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link VersionSelector#selectModVersions()} on generated catalogs. Selections that cannot be made are
+ * measured in the same way as those that succeed, but any other exception fails the benchmark.
+ * <br>
+ * The backtracking search does not find a selection for some of the random catalogs with conflicts, so for those it
+ * measures the time taken to give up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+	public enum Shape {
+		/** A chain of mods where only the lowest version of each can be used */
+		CHAIN,
+
+		/**
+		 * A chain where lowering a mod repeatedly adds and removes its need for the next mod, the worst case for
+		 * backtracking
+		 */
+		ZIGZAG
+	}
+
+	/**
+	 * A catalog where each version depends on random later mods
+	 */
+	@State(Scope.Benchmark)
+	public static class RandomCatalog {
+		@Param({ "50", "200" })
+		int mods;
+
+		@Param({ "12" })
+		int versions;
+
+		@Param({ "3" })
+		int fanOut;
+
+		@Param({ "0.0", "0.1", "0.3" })
+		double conflictDensity;
+
+		SyntheticCatalog catalog;
+
+		@Setup
+		public void createCatalog() {
+			catalog = SyntheticCatalog.random(mods, versions, fanOut, conflictDensity);
+		}
+	}
+
+	/**
+	 * A catalog built to force a search that tries the highest versions first to lower many mods
+	 */
+	@State(Scope.Benchmark)
+	public static class ShapedCatalog {
+		@Param({ "50", "200" })
+		int mods;
+
+		@Param({ "12" })
+		int versions;
+
+		@Param({ "CHAIN", "ZIGZAG" })
+		Shape shape;
+
+		SyntheticCatalog catalog;
+
+		@Setup
+		public void createCatalog() {
+			catalog = shape == Shape.CHAIN ? SyntheticCatalog.chain(mods, versions) : SyntheticCatalog.zigzag(mods, versions);
+		}
+	}
+
+	@Param({ "BACKTRACKING", "CONFLICT_DRIVEN", "PORTFOLIO" })
+	SelectionStrategy strategy;
+
+	@Benchmark
+	public Object selectRandom(RandomCatalog random) {
+		return select(random.catalog);
+	}
+
+	@Benchmark
+	public Object selectShaped(ShapedCatalog shaped) {
+		return select(shaped.catalog);
+	}
+
+	private Object select(SyntheticCatalog catalog) {
+		try {
+			return new VersionSelector(catalog, catalog.requirements()).strategy(strategy).selectModVersions();
+		} catch (ModLoadingException e) {
+			return e;
+		}
+	}
+}
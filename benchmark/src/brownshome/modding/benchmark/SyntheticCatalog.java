@@ -0,0 +1,126 @@
+package brownshome.modding.benchmark;
+
+import brownshome.modding.ModDependency;
+import brownshome.modding.ModInfo;
+import brownshome.modding.modsource.ModSource;
+import brownshome.modding.util.AnyMod;
+import brownshome.modding.util.DependencyRules;
+import brownshome.modding.util.RuleModDependency;
+import brownshome.modding.util.SemanticModVersion;
+
+import java.util.*;
+
+/**
+ * A generated catalog of mods, named m0, m1 and so on. The same arguments always generate the same catalog. The root
+ * requirement of every catalog is any version of m0.
+ */
+final class SyntheticCatalog extends ModSource {
+	private static final class SyntheticModInfo extends ModInfo {
+		SyntheticModInfo(String name, SemanticModVersion version, Collection<ModDependency> dependencies) {
+			super(name, version, name, dependencies);
+		}
+	}
+
+	/** Creates the dependencies of one version of one mod */
+	private interface DependencyGenerator {
+		List<ModDependency> dependencies(int mod, int version);
+	}
+
+	/** Rules that can never conflict with each other, as the highest version meets all of them */
+	private static final DependencyRules[] LOWER_BOUNDS = { DependencyRules.NEWER_OR_EQUAL };
+
+	/** Rules that can rule out the highest version, and so may conflict */
+	private static final DependencyRules[] CONFLICTING = { DependencyRules.COMPATIBLE, DependencyRules.EXACTLY, DependencyRules.OLDER_OR_EQUAL, DependencyRules.EXCLUDE };
+
+	private final Map<String, List<ModInfo>> mods = new HashMap<>();
+
+	private SyntheticCatalog(int mods, int versions, DependencyGenerator generator) {
+		for (int mod = 0; mod < mods; mod++) {
+			var infos = new ArrayList<ModInfo>(versions);
+
+			for (int v = 0; v < versions; v++) {
+				infos.add(new SyntheticModInfo(name(mod), version(v), generator.dependencies(mod, v)));
+			}
+
+			this.mods.put(name(mod), infos);
+		}
+	}
+
+	/**
+	 * Each version depends on random later mods, so that the mods form a directed acyclic graph
+	 *
+	 * @param mods the number of mods
+	 * @param versions the number of versions of each mod
+	 * @param fanOut the number of dependencies of each version
+	 * @param conflictDensity the fraction of dependencies that may rule out the highest version
+	 */
+	static SyntheticCatalog random(int mods, int versions, int fanOut, double conflictDensity) {
+		var random = new Random(mods * 31L + versions * 17L + fanOut);
+
+		return new SyntheticCatalog(mods, versions, (mod, v) -> {
+			var dependencies = new ArrayList<ModDependency>(fanOut);
+
+			for (int i = 0; i < fanOut && mod + 1 < mods; i++) {
+				int target = mod + 1 + random.nextInt(mods - mod - 1);
+				var rules = random.nextDouble() < conflictDensity ? CONFLICTING : LOWER_BOUNDS;
+
+				dependencies.add(new RuleModDependency(name(target), version(random.nextInt(versions)), rules[random.nextInt(rules.length)]));
+			}
+
+			return dependencies;
+		});
+	}
+
+	/**
+	 * Each version of a mod needs at least the same version of the next mod, and only the lowest version of the last
+	 * mod can be installed. A search that tries the highest version first must lower every mod in the chain.
+	 */
+	static SyntheticCatalog chain(int mods, int versions) {
+		return new SyntheticCatalog(mods, versions, (mod, v) -> lowerBound(mod + 1, mods, v));
+	}
+
+	/**
+	 * As {@link #chain(int, int)}, except that the first version of each major version, 1.0.0, 2.0.0 and so on, needs
+	 * the mod after next rather than the next mod. Lowering a mod onto such a version drops its need for the next mod,
+	 * and lowering it further brings that need back. A search that does not learn from conflicts then searches the next
+	 * mod again from its highest version each time a mod crosses a major version, and this repeated work compounds down
+	 * the chain.
+	 */
+	static SyntheticCatalog zigzag(int mods, int versions) {
+		return new SyntheticCatalog(mods, versions, (mod, v) -> lowerBound(v % 4 == 0 ? mod + 2 : mod + 1, mods, v));
+	}
+
+	/**
+	 * Needs at least version v of the target mod, or if there is no such mod, only allows the lowest version
+	 */
+	private static List<ModDependency> lowerBound(int target, int mods, int v) {
+		if (target < mods) {
+			return List.of(new RuleModDependency(name(target), version(v), DependencyRules.NEWER_OR_EQUAL));
+		}
+
+		return v == 0 ? List.of() : List.of(new AnyMod("missing"));
+	}
+
+	List<ModDependency> requirements() {
+		return List.of(new AnyMod(name(0)));
+	}
+
+	private static String name(int mod) {
+		return "m" + mod;
+	}
+
+	/** The versions of each mod run 1.0.0, 1.1.0, 1.2.0, 1.3.0, 2.0.0 and so on */
+	private static SemanticModVersion version(int v) {
+		return new SemanticModVersion(1 + v / 4, v % 4, 0);
+	}
+
+	@Override
+	public Collection<ModInfo> availableMods(String modName) {
+		return mods.getOrDefault(modName, List.of());
+	}
+
+	@Override
+	public ModuleLayer loadLayer(ModInfo modInfo, List<ModuleLayer> parentLayers) {
+		throw new UnsupportedOperationException("Synthetic mods cannot be loaded");
+	}
+}
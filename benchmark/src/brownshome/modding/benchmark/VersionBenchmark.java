@@ -0,0 +1,91 @@
+package brownshome.modding.benchmark;
+
+import brownshome.modding.ModVersion;
+import brownshome.modding.util.SemanticModVersion;
+import brownshome.modding.util.SemanticVersionInterner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing and comparing {@link SemanticModVersion}s. Each benchmark works through the same generated list of
+ * versions, a quarter of which are pre-releases and a quarter of which have build metadata.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionBenchmark {
+	private static final String[] PRE_RELEASES = { "alpha", "alpha.1", "beta.2", "rc.1", "rc.10", "SNAPSHOT" };
+
+	@Param({ "1000" })
+	int count;
+
+	private String[] strings;
+	private ModVersion[] versions;
+
+	@Setup
+	public void createVersions() {
+		var random = new Random(42);
+
+		strings = new String[count];
+		versions = new ModVersion[count];
+
+		for (int i = 0; i < count; i++) {
+			var builder = new StringBuilder()
+					.append(random.nextInt(5)).append('.')
+					.append(random.nextInt(20)).append('.')
+					.append(random.nextInt(50));
+
+			if (random.nextInt(4) == 0) {
+				builder.append('-').append(PRE_RELEASES[random.nextInt(PRE_RELEASES.length)]);
+			}
+
+			if (random.nextInt(4) == 0) {
+				builder.append('+').append(random.nextInt(1000));
+			}
+
+			strings[i] = builder.toString();
+			versions[i] = SemanticModVersion.createVersion(strings[i]);
+		}
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole) {
+		for (var string : strings) {
+			blackhole.consume(SemanticModVersion.createVersion(string));
+		}
+	}
+
+	@Benchmark
+	public void parseInterned(Blackhole blackhole) {
+		var interner = new SemanticVersionInterner();
+
+		for (var string : strings) {
+			blackhole.consume(interner.parse(string));
+		}
+	}
+
+	@Benchmark
+	public int compare() {
+		int result = 0;
+
+		for (int i = 1; i < versions.length; i++) {
+			result += versions[i - 1].compareTo(versions[i]);
+		}
+
+		return result;
+	}
+
+	@Benchmark
+	public ModVersion[] sort() {
+		var copy = versions.clone();
+		Arrays.sort(copy);
+		return copy;
+	}
+}
@@ -3,6 +3,7 @@ package brownshome.modding.annotation.processor;
 import brownshome.modding.ModDependency;
 import brownshome.modding.ModInfo;
 import brownshome.modding.annotation.DefineMod;
+import brownshome.modding.modsource.ModMetadataFile;
 import brownshome.modding.util.DependencyRules;
 import brownshome.modding.util.RuleModDependency;
 import brownshome.modding.util.SemanticModVersion;
@@ -63,6 +64,7 @@ public class ModInfoGenerator extends AbstractProcessor {
 			return;
 		}
 		var moduleName = moduleElement.getQualifiedName().toString();
+		var infoClassName = packageName + "." + className;
 
 		var requirements = definedModAnnotation.requirements();
 
@@ -107,7 +109,14 @@ public class ModInfoGenerator extends AbstractProcessor {
 		}
 
 		writeLine("META-INF/services/brownshome.modding.Mod", originator.getQualifiedName().toString());
-		writeLine("META-INF/services/brownshome.modding.ModInfo", packageName + "." + className);
+		writeLine("META-INF/services/brownshome.modding.ModInfo", infoClassName);
+
+		// Write an index of the mods, so that they can be read without loading the info classes
+		writeLine(ModMetadataFile.LOCATION, ModMetadataFile.modLine(definedModAnnotation.name(), definedModAnnotation.version(), moduleName, infoClassName));
+
+		for (var requirement : requirements) {
+			writeLine(ModMetadataFile.LOCATION, ModMetadataFile.requirementLine(requirement.name(), requirement.version(), requirement.rule()));
+		}
 	}
 
 	private void writeLine(String file, String line) {
@@ -117,6 +126,10 @@ public class ModInfoGenerator extends AbstractProcessor {
 	private void flushWrites() {
 		for (var entry : pendingWrites.entrySet()) {
 			try (Writer writer = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", entry.getKey()).openWriter()) {
+				if (entry.getKey().equals(ModMetadataFile.LOCATION)) {
+					writer.write(ModMetadataFile.HEADER + "\n");
+				}
+
 				writer.write(entry.getValue().toString());
 			} catch(IOException e) {
 				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write service data: " + e.getMessage());
@@ -0,0 +1,25 @@
+package brownshome.modding;
+
+import brownshome.modding.util.BatchedStageName;
+
+import java.util.List;
+
+/**
+ * Handles the contributions made by many mods to a loading stage in a single call. This allows a shared structure,
+ * such as a registry, to be populated in bulk.
+ *
+ * @param <T> the type of the contributions
+ * @see Mod#createContributionRequest(BatchedStageName, Object)
+ * @see BatchedStageName
+ */
+@FunctionalInterface
+public interface BatchHandler<T> {
+	/**
+	 * Handles a batch of contributions. This may be called several times for one stage name if the contributions do
+	 * not all become ready at the same time.
+	 *
+	 * @param contributions the contributions that are ready, in the order that they became ready
+	 * @throws Exception if the contributions could not be handled, this causes loading to fail
+	 */
+	void handle(List<T> contributions) throws Exception;
+}
@@ -0,0 +1,108 @@
+package brownshome.modding;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor that limits the number of tasks that are running on a delegate executor at once. Tasks that are submitted
+ * while the limit is reached are queued, no thread is blocked while waiting.
+ * <br>
+ * If the delegate rejects a task no task is lost. A task submitted to {@link #execute(Runnable)} is rejected if it has
+ * not been started, and any other queued tasks are kept. Tasks that are rejected while a running task is draining the
+ * queue are run on the thread of that task instead.
+ */
+final class BoundedExecutor implements Executor {
+	private final Executor delegate;
+	private final int maxRunning;
+
+	private final Deque<Runnable> waiting = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger running = new AtomicInteger();
+
+	BoundedExecutor(Executor delegate, int maxRunning) {
+		if (maxRunning < 1) {
+			throw new IllegalArgumentException("At least one task must be allowed to run");
+		}
+
+		this.delegate = delegate;
+		this.maxRunning = maxRunning;
+	}
+
+	/**
+	 * The maximum number of tasks that run on the delegate at once
+	 */
+	int maxRunning() {
+		return maxRunning;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		waiting.add(task);
+
+		try {
+			drain();
+		} catch (RejectedExecutionException ree) {
+			// Only reject the task if it has not been started, so that it is never both rejected and run
+			if (waiting.removeLastOccurrence(task)) {
+				throw ree;
+			}
+		}
+	}
+
+	/**
+	 * Starts queued tasks on the delegate until the limit is reached.
+	 *
+	 * @throws RejectedExecutionException if the delegate rejects a task, the task is returned to the head of the queue
+	 */
+	private void drain() {
+		while (!waiting.isEmpty()) {
+			int current = running.get();
+
+			if (current >= maxRunning) {
+				// A running task will drain the queue when it completes
+				return;
+			}
+
+			if (!running.compareAndSet(current, current + 1)) {
+				continue;
+			}
+
+			var task = waiting.poll();
+
+			if (task == null) {
+				// Another thread took the task, release the slot and check again
+				running.decrementAndGet();
+				continue;
+			}
+
+			try {
+				delegate.execute(() -> runAndDrain(task));
+			} catch (RejectedExecutionException ree) {
+				running.decrementAndGet();
+				waiting.addFirst(task);
+				throw ree;
+			}
+		}
+	}
+
+	private void runAndDrain(Runnable task) {
+		try {
+			task.run();
+		} finally {
+			running.decrementAndGet();
+		}
+
+		try {
+			drain();
+		} catch (RejectedExecutionException ree) {
+			// There is no caller to report the rejection to, so the waiting tasks are run on this thread
+			Runnable next;
+
+			while ((next = waiting.poll()) != null) {
+				next.run();
+			}
+		}
+	}
+}
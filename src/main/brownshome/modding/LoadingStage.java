@@ -2,27 +2,124 @@ package brownshome.modding;
 
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
 public final class LoadingStage {
 	private final Mod mod;
 	private final LoadingStageName stageName;
-	private final Callable<Void> action;
+	private final StageAction action;
 
+	/**
+	 * The action run by a stage. The stage is complete once the returned completion stage completes.
+	 */
+	@FunctionalInterface
+	interface StageAction {
+		CompletionStage<Void> start() throws Exception;
+	}
+
+	private static final CompletionStage<Void> COMPLETED = CompletableFuture.completedStage(null);
+
+	/**
+	 * Selects a set of stages that this stage is ordered relative to.
+	 */
 	@FunctionalInterface
-	private interface StageFilter extends Predicate<LoadingStage> {  }
+	private interface StageFilter {
+		Collection<LoadingStage> matching(StageIndex index);
+	}
 
 	private final Collection<StageFilter> after = new ArrayList<>();
 	private final Collection<StageFilter> before = new ArrayList<>();
 
+	private boolean blocking = false;
+	private boolean onLoaderThread = false;
+	private final Collection<ResourceGroup> resourceGroups = new LinkedHashSet<>();
+
+	// Only used by contributions to a batched stage
+	private final boolean contribution;
+	private final Object contributionValue;
+	private Mod batchHandlerMod;
+	private BatchHandler<?> batchHandler;
+
+	/** The contributions run by this stage if it is a batch, otherwise null */
+	private List<LoadingStage> batchedStages = null;
+
+	/** The expected run time of this stage, in nanoseconds if a stage profile was loaded, otherwise in stages */
+	private long expectedDuration;
+
 	// Variables used during construction
 	private Collection<LoadingStage> stagesWaiting = new ArrayList<>();
-	private int numberOfParentsLeft = 0;
+	private final AtomicInteger numberOfParentsLeft = new AtomicInteger();
 
-	LoadingStage(Mod mod, LoadingStageName stageName, Callable<Void> action) {
+	private LoadingStage(Mod mod, LoadingStageName stageName, StageAction action, boolean contribution, Object contributionValue) {
 		this.mod = mod;
 		this.stageName = stageName;
 		this.action = action;
+		this.contribution = contribution;
+		this.contributionValue = contributionValue;
+		this.expectedDuration = mod == null ? 0 : 1;
+	}
+
+	LoadingStage(Mod mod, LoadingStageName stageName, StageAction action) {
+		this(mod, stageName, action, false, null);
+	}
+
+	LoadingStage(Mod mod, LoadingStageName stageName, Callable<Void> action) {
+		this(mod, stageName, () -> {
+			action.call();
+			return COMPLETED;
+		});
+	}
+
+	/**
+	 * Creates a synthetic stage with no mod and no action. Barriers are used to join many edges into one, so that
+	 * ordering against every stage of a name does not need an edge between every pair of stages.
+	 */
+	static LoadingStage barrier(LoadingStageName stageName) {
+		return new LoadingStage(null, stageName, (StageAction) null);
+	}
+
+	/**
+	 * Creates a stage that contributes a value to the batch handler of a stage name. Contributions have no action of
+	 * their own, the scheduler runs all ready contributions with the same name as a single batch.
+	 */
+	static LoadingStage contribution(Mod mod, LoadingStageName stageName, Object value) {
+		return new LoadingStage(mod, stageName, null, true, value);
+	}
+
+	/**
+	 * Creates a stage that passes the values of a list of contributions to their batch handler. The batch uses every
+	 * resource group used by the contributions, and inherits their thread requirements.
+	 */
+	@SuppressWarnings("unchecked")
+	static LoadingStage batch(List<LoadingStage> contributions) {
+		var first = contributions.get(0);
+		var handler = (BatchHandler<Object>) first.batchHandler;
+		var values = new ArrayList<>(contributions.size());
+
+		for (var contribution : contributions) {
+			assert contribution.isContribution() && contribution.batchHandler == handler;
+
+			values.add(contribution.contributionValue);
+		}
+
+		var batch = new LoadingStage(first.batchHandlerMod, first.stageName, () -> {
+			handler.handle(values);
+			return COMPLETED;
+		});
+
+		batch.batchedStages = contributions;
+
+		for (var contribution : contributions) {
+			batch.resourceGroups.addAll(contribution.resourceGroups);
+			batch.blocking |= contribution.blocking;
+			batch.onLoaderThread |= contribution.onLoaderThread;
+		}
+
+		return batch;
 	}
 
 	// BUILDER METHODS
@@ -49,7 +146,7 @@ public final class LoadingStage {
 	 * @param includeThisMod whether this mod should be considered for determining ordering.
 	 */
 	public LoadingStage after(LoadingStageName stageName, boolean includeThisMod) {
-		after.add(includeThisMod ? allMods(stageName) : allModsExceptThis(stageName));
+		after.add(includeThisMod ? afterAllMods(stageName) : afterAllModsExceptThis(stageName));
 		return this;
 	}
 
@@ -59,7 +156,7 @@ public final class LoadingStage {
 	 * @param includeThisMod whether this mod should be considered for determining ordering.
 	 */
 	public LoadingStage before(LoadingStageName stageName, boolean includeThisMod) {
-		before.add(includeThisMod ? allMods(stageName) : allModsExceptThis(stageName));
+		before.add(includeThisMod ? beforeAllMods(stageName) : beforeAllModsExceptThis(stageName));
 		return this;
 	}
 
@@ -80,100 +177,290 @@ public final class LoadingStage {
 	}
 
 	public LoadingStage after(LoadingStage stage) {
-		after.add(stage::equals);
+		after.add(single(stage));
 		return this;
 	}
 
 	public LoadingStage before(LoadingStage stage) {
-		before.add(stage::equals);
+		before.add(single(stage));
+		return this;
+	}
+
+	/**
+	 * Marks this stage as spending most of its time blocked, for example on disk or network I/O. Blocking stages are
+	 * run on the blocking stage executor of the loader, if one is set.
+	 *
+	 * @see ModLoader#blockingStagesOnVirtualThreads(int)
+	 */
+	public LoadingStage blocking() {
+		blocking = true;
+		return this;
+	}
+
+	/**
+	 * Forces this stage to run on the thread that called {@link ModLoader#loadMods}, even if the loader runs other
+	 * stages on an executor. This is needed for work that is tied to a thread, such as creating a window or an audio
+	 * context. This takes precedence over {@link #blocking()}.
+	 */
+	public LoadingStage onLoaderThread() {
+		onLoaderThread = true;
+		return this;
+	}
+
+	/**
+	 * Specifies a resource group that this stage uses. The stage holds one permit from the group while it runs, and is
+	 * not started until a permit is available. This does not order this stage relative to other stages using the group.
+	 */
+	public LoadingStage uses(ResourceGroup group) {
+		resourceGroups.add(Objects.requireNonNull(group));
 		return this;
 	}
 
 	// HELPERS
 
 	private static StageFilter exactMatch(Mod mod, LoadingStageName name) {
-		return s -> Objects.equals(s.mod, mod) && Objects.equals(s.stageName, name);
+		return index -> index.stagesNamed(mod, name);
+	}
+
+	private static StageFilter afterAllMods(LoadingStageName name) {
+		return index -> List.of(index.completionBarrier(name));
+	}
+
+	private static StageFilter beforeAllMods(LoadingStageName name) {
+		return index -> List.of(index.startBarrier(name));
 	}
 
-	private static StageFilter allMods(LoadingStageName name) {
-		return s -> Objects.equals(s.stageName, name);
+	private StageFilter afterAllModsExceptThis(LoadingStageName name) {
+		return index -> index.completionBarriersExcept(mod, name);
 	}
 
-	private StageFilter allModsExceptThis(LoadingStageName name) {
-		return s -> !Objects.equals(s.mod, mod) && Objects.equals(s.stageName, name);
+	private StageFilter beforeAllModsExceptThis(LoadingStageName name) {
+		return index -> index.startBarriersExcept(mod, name);
 	}
 
 	private static StageFilter customFilter(LoadingStageName name, Predicate<Mod> mods) {
-		return s -> Objects.equals(s.stageName, name) && mods.test(s.mod);
+		// Only the stages with a matching name need to be tested against the predicate
+		return index -> {
+			var result = new ArrayList<LoadingStage>();
+
+			for (var stage : index.stagesNamed(name)) {
+				if (mods.test(stage.mod)) {
+					result.add(stage);
+				}
+			}
+
+			return result;
+		};
+	}
+
+	private static StageFilter single(LoadingStage stage) {
+		return index -> index.contains(stage) ? List.of(stage) : List.of();
 	}
 
 	// CONFIGURE EXECUTION
 
-	void computeExecutionTree(Collection<LoadingStage> stages) {
-		for (var stage : stages) {
-			if (this.isAfter(stage)) {
-				numberOfParentsLeft++;
-				stage.stagesWaiting.add(this);
-			}
+	/**
+	 * Adds the edges between this stage and the stages in the index that it is ordered against.
+	 */
+	void computeExecutionTree(StageIndex index) {
+		for (var stage : matchingStages(after, index)) {
+			addEdge(stage, this);
+		}
 
-			if (this.isBefore(stage)) {
-				stagesWaiting.add(stage);
-				stage.numberOfParentsLeft++;
-			}
+		for (var stage : matchingStages(before, index)) {
+			addEdge(this, stage);
 		}
 	}
 
-	private boolean isBefore(LoadingStage stage) {
-		return before.stream().anyMatch(filter -> filter.test(stage));
+	/**
+	 * Adds an edge to the execution tree, so that child runs after parent.
+	 */
+	static void addEdge(LoadingStage parent, LoadingStage child) {
+		parent.stagesWaiting.add(child);
+		child.numberOfParentsLeft.incrementAndGet();
 	}
 
-	private boolean isAfter(LoadingStage stage) {
-		return after.stream().anyMatch(filter -> filter.test(stage));
+	/**
+	 * Finds the stages matching any of the filters. Each stage is only returned once, even if it matches several filters.
+	 */
+	private static Collection<LoadingStage> matchingStages(Collection<StageFilter> filters, StageIndex index) {
+		if (filters.size() == 1) {
+			return filters.iterator().next().matching(index);
+		}
+
+		var result = new LinkedHashSet<LoadingStage>();
+
+		for (var filter : filters) {
+			result.addAll(filter.matching(index));
+		}
+
+		return result;
+	}
+
+	/**
+	 * The mod that this stage belongs to
+	 */
+	Mod mod() {
+		return mod;
+	}
+
+	/**
+	 * The name of this stage
+	 */
+	LoadingStageName stageName() {
+		return stageName;
 	}
 
 	/**
 	 * Returns true if nothing needs to execute before this stage
 	 */
 	boolean root() {
-		return numberOfParentsLeft == 0;
+		return numberOfParentsLeft.get() == 0;
 	}
 
 	// EXECUTION
 
 	/**
-	 * Runs this task and then runs child tasks, if they are ready to be run.
-	 * @throws ModLoadingException If this task or a sub-task throws an exception
+	 * Starts the action of this task, without running any child tasks. The task is complete when the returned
+	 * completion stage completes, which may happen on another thread.
+	 * @throws ModStageExecutionException If the action throws an exception while starting
 	 */
-	void execute() throws ModLoadingException {
-		assert numberOfParentsLeft == 0;
+	CompletionStage<Void> startAction() throws ModStageExecutionException {
+		assert numberOfParentsLeft.get() == 0 && !isContribution();
+
+		if (isBarrier()) {
+			return COMPLETED;
+		}
 
 		mod.signalIsLoading();
 
 		try {
-			action.call();
+			var result = action.start();
+
+			if (result == null) {
+				throw new NullPointerException("The action returned a null completion stage");
+			}
+
+			return result;
 		} catch(Exception e) {
 			throw new ModStageExecutionException(mod, stageName, e);
+		} finally {
+			mod.signalFinishedLoading();
 		}
+	}
 
-		for (var stage : stagesWaiting) {
-			// Traverse DFS into the stages tree.
-			// TODO multithread
-			stage.signalParentCompleted();
+	/**
+	 * Converts the exception that an asynchronous action completed with into a loading exception. Errors are returned
+	 * unchanged.
+	 */
+	Throwable asyncFailure(Throwable throwable) {
+		if (throwable instanceof CompletionException && throwable.getCause() != null) {
+			throwable = throwable.getCause();
 		}
+
+		if (throwable instanceof Exception) {
+			return new ModStageExecutionException(mod, stageName, (Exception) throwable);
+		}
+
+		if (throwable instanceof Error) {
+			return throwable;
+		}
+
+		return new ModLoadingException("Unexpected failure in " + this, throwable);
 	}
 
-	private void signalParentCompleted() throws ModLoadingException {
-		assert numberOfParentsLeft > 0;
+	/**
+	 * Returns true if this is a synthetic stage created by the loader, rather than a stage requested by a mod
+	 */
+	boolean isBarrier() {
+		return mod == null;
+	}
 
-		numberOfParentsLeft--;
+	/**
+	 * The expected run time of this stage. This is measured in nanoseconds if a stage profile was loaded, otherwise
+	 * every stage is expected to take one unit of time. Barriers are expected to take no time.
+	 */
+	long expectedDuration() {
+		return expectedDuration;
+	}
 
-		if (numberOfParentsLeft == 0) {
-			execute();
-		}
+	void expectedDuration(long expectedDuration) {
+		assert !isBarrier();
+
+		this.expectedDuration = expectedDuration;
+	}
+
+	/**
+	 * Returns true if this stage is a contribution to a batched stage
+	 */
+	boolean isContribution() {
+		return contribution;
+	}
+
+	/**
+	 * Sets the handler that this contribution is passed to
+	 */
+	void batchHandler(Mod handlerMod, BatchHandler<?> handler) {
+		assert isContribution();
+
+		this.batchHandlerMod = handlerMod;
+		this.batchHandler = handler;
+	}
+
+	/**
+	 * Returns the stages that are complete once this stage completes. This is the contributions of a batch, or
+	 * this stage.
+	 */
+	List<LoadingStage> completedStages() {
+		return batchedStages == null ? List.of(this) : batchedStages;
+	}
+
+	/**
+	 * Returns the resource groups that this stage holds a permit from while it runs
+	 */
+	Collection<ResourceGroup> resourceGroups() {
+		return resourceGroups;
+	}
+
+	/**
+	 * Returns true if this stage must be run on the thread that is loading the mods
+	 */
+	boolean runsOnLoaderThread() {
+		return onLoaderThread;
+	}
+
+	/**
+	 * Returns true if this stage has been marked as blocking
+	 */
+	boolean isBlocking() {
+		return blocking;
+	}
+
+	/**
+	 * Returns the stages that are waiting on this stage to complete.
+	 */
+	Collection<LoadingStage> stagesWaiting() {
+		return stagesWaiting;
+	}
+
+	/**
+	 * Signals that one of the parents of this stage has completed. This method is safe to call from multiple threads.
+	 * @return true if this was the last parent, and this stage is now ready to run
+	 */
+	boolean signalParentCompleted() {
+		int parentsLeft = numberOfParentsLeft.decrementAndGet();
+
+		assert parentsLeft >= 0;
+
+		return parentsLeft == 0;
 	}
 
 	@Override
 	public String toString() {
+		if (isBarrier()) {
+			return String.format("barrier[%s]", stageName);
+		}
+
 		return String.format("%s[%s]", mod, stageName);
 	}
 }
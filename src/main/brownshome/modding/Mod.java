@@ -2,14 +2,20 @@ package brownshome.modding;
 
 import browngu.logging.Logger;
 import browngu.logging.Severity;
+import brownshome.modding.util.BatchedStageName;
 import brownshome.modding.util.PredefinedLoadingStages;
 import brownshome.modding.util.StringLoadingStage;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
 import java.util.ServiceLoader;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 /**
  * An instance of this class represents a mod.
@@ -20,6 +26,8 @@ public abstract class Mod {
 	private final LoadingStage startStage;
 	private final LoadingStage endStage;
 
+	private final Map<LoadingStageName, BatchHandler<?>> batchHandlers = new HashMap<>();
+
 	// Lazy
 	private ModLoader loader;
 
@@ -51,6 +59,60 @@ public abstract class Mod {
 		return createLoadingStageRequest(new StringLoadingStage(name), Executors.callable(action, null));
 	}
 
+	/**
+	 * Creates a blank request for an asynchronous loading stage. The action is called to start the stage, and the stage
+	 * is complete once the returned completion stage completes. Stages waiting on this stage are released when it
+	 * completes, without a thread waiting on it in the meantime. If it completes exceptionally loading fails.
+	 * <br>
+	 * If another stage fails while this stage is pending, loading fails without waiting for this stage to complete. If
+	 * the returned completion stage is a {@link java.util.concurrent.CompletableFuture} it is cancelled.
+	 *
+	 * @param name The name of the stage.
+	 * @param action A task that starts the work of the stage.
+	 * @return An object that can be used to configure the loading stage request.
+	 */
+	protected final LoadingStage createAsyncLoadingStageRequest(LoadingStageName name, Supplier<? extends CompletionStage<Void>> action) {
+		return new LoadingStage(this, name, action::get).after(startStage).before(endStage);
+	}
+
+	protected final LoadingStage createAsyncLoadingStageRequest(String name, Supplier<? extends CompletionStage<Void>> action) {
+		return createAsyncLoadingStageRequest(new StringLoadingStage(name), action);
+	}
+
+	/**
+	 * Declares that this mod handles all contributions to a stage name, in batches. Contributions made by any mod using
+	 * {@link #createContributionRequest} are collected, and all contributions that are ready at the same time are passed
+	 * to the handler in a single call. Only one mod may handle each stage name. This should be called from
+	 * {@link #configureLoadingProcess()}.
+	 *
+	 * @param name The name of the batched stage.
+	 * @param handler The handler to pass contributions to.
+	 * @param <T> The type of the contributions.
+	 * @throws IllegalStateException if this mod already handles the name
+	 */
+	protected final <T> void handleBatch(BatchedStageName<T> name, BatchHandler<? super T> handler) {
+		var existing = batchHandlers.putIfAbsent(name, Objects.requireNonNull(handler));
+
+		if (existing != null) {
+			throw new IllegalStateException(String.format("%s already handles the batched stage '%s'", this, name));
+		}
+	}
+
+	/**
+	 * Creates a request to contribute a value to a batched stage. The value is passed to the batch handler declared
+	 * for the name, along with the contributions of other mods. The request can be ordered like any other stage, and
+	 * one mod may make several contributions to the same name.
+	 *
+	 * @param name The name of the batched stage.
+	 * @param contribution The value to pass to the batch handler.
+	 * @param <T> The type of the contributions.
+	 * @return An object that can be used to configure the contribution request.
+	 * @throws ClassCastException if the value is not of the type of the name
+	 */
+	protected final <T> LoadingStage createContributionRequest(BatchedStageName<T> name, T contribution) {
+		return LoadingStage.contribution(this, name, name.type().cast(contribution)).after(startStage).before(endStage);
+	}
+
 	/**
 	 * Forces a collection of requests to execute in their iteration order.
 	 *
@@ -79,6 +141,10 @@ public abstract class Mod {
 	 */
 	protected abstract Collection<? extends LoadingStage> configureLoadingProcess();
 
+	final Map<LoadingStageName, BatchHandler<?>> batchHandlers() {
+		return batchHandlers;
+	}
+
 	final LoadingStage startStage() {
 		return startStage;
 	}
@@ -114,6 +180,10 @@ public abstract class Mod {
 	/**
 	 * Gets a service loader that returns all service providers loaded currently. This loader will load from all classpath
 	 * sources and loaded mods.
+	 * <br>
+	 * This method may be called from any loading stage, including stages running at the same time on other threads.
+	 * Each call returns a new loader, as a {@link ServiceLoader} is not thread-safe. The returned loader should only be
+	 * used by the thread that requested it, and providers are instantiated separately by each loader.
 	 *
 	 * @param serviceClass the class to load services for
 	 * @param <TYPE> the type of the service provider
@@ -124,7 +194,8 @@ public abstract class Mod {
 	}
 
 	/**
-	 * Returns the mod that is currently executing a loading stage
+	 * Returns the mod that is currently executing a loading stage on the calling thread, or null if the calling thread
+	 * is not running a loading stage.
 	 */
 	protected final Mod currentlyLoadingMod() {
 		return loader.currentlyLoadingMod();
@@ -151,4 +222,8 @@ public abstract class Mod {
 	final void signalIsLoading() {
 		loader.signalIsLoading(this);
 	}
+
+	final void signalFinishedLoading() {
+		loader.signalFinishedLoading();
+	}
 }
\ No newline at end of file
@@ -1,7 +1,25 @@
 package brownshome.modding;
 
+import brownshome.modding.util.VersionRange;
+
 public interface ModDependency {
 	String modName();
 	boolean isMetBy(ModVersion version);
-}
 
+	/**
+	 * Returns the range of versions that meet this dependency, or null if it cannot be expressed as a range. The range
+	 * must contain exactly the semantic versions that {@link #isMetBy} accepts.
+	 */
+	default VersionRange range() {
+		return null;
+	}
+
+	/**
+	 * Returns true if this dependency only sets a lowest version of the mod.
+	 *
+	 * @see brownshome.modding.util.DependencyRule#isLowerBound()
+	 */
+	default boolean isLowerBound() {
+		return false;
+	}
+}
@@ -1,11 +1,15 @@
 package brownshome.modding;
 
+import brownshome.modding.dependencygraph.SelectionStrategy;
 import brownshome.modding.dependencygraph.VersionSelector;
 import brownshome.modding.modsource.ModSource;
 
 import java.lang.module.Configuration;
 import java.lang.module.ModuleFinder;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /**
@@ -14,14 +18,34 @@ import java.util.stream.Collectors;
 public final class ModLoader {
 	private final ModSource source;
 
+	/** The executor used to run loading stages, or null if they should be run on the loading thread */
+	private Executor stageExecutor = null;
+	private int stageParallelism = 1;
+
+	/** The executor used to run blocking loading stages, or null if they should be run with all other stages */
+	private Executor blockingStageExecutor = null;
+	private int blockingStageParallelism = 1;
+
+	private StagePriority stagePriority = StagePriorities.CRITICAL_PATH;
+
+	/** The file that stage durations are recorded in, or null if they should not be recorded */
+	private Path stageProfileFile = null;
+
+	private SelectionStrategy selectionStrategy = SelectionStrategy.BACKTRACKING;
+
+	/** The file that the selected mods are locked in, or null if the selection should not be locked */
+	private Path lockFile = null;
+
 	// Local variables used for stages
 	private Map<String, ModuleLayer> modLayers;
 	private Map<String, Mod> loadedMods;
 
 	private ModuleLayer childOfAllLayer;
-	private Map<Class<?>, ServiceLoader<?>> serviceLoaders;
 
-	private Mod currentlyLoadingMod = null;
+	/** The service classes that this module has been granted use of. Stages may add to this from several threads */
+	private Set<Class<?>> serviceClassesUsed;
+
+	private final ThreadLocal<Mod> currentlyLoadingMod = new ThreadLocal<>();
 
 	/**
 	 * Creates a modloaded from a collection of sources
@@ -31,6 +55,132 @@ public final class ModLoader {
 		this.source = source;
 	}
 
+	/**
+	 * Sets the executor that loading stages are run on. Stages that do not depend on each other may be run
+	 * concurrently. If this is not set, or is set to null, all stages are run on the thread that calls
+	 * {@link #loadMods(Collection)}. Stages marked with {@link LoadingStage#onLoaderThread()} are always run on that
+	 * thread.
+	 * <br>
+	 * No more stages are submitted to the executor than it can run at once, so that the remaining stages are started in
+	 * order of priority as threads become free. This limit is the parallelism of a
+	 * {@link java.util.concurrent.ForkJoinPool}, the maximum size of a {@link java.util.concurrent.ThreadPoolExecutor},
+	 * and otherwise the number of processors.
+	 *
+	 * @param executor the executor to run stages on
+	 * @return this loader
+	 * @see #stageExecutor(Executor, int)
+	 */
+	public ModLoader stageExecutor(Executor executor) {
+		return stageExecutor(executor, executor == null ? 1 : StageExecutors.parallelism(executor));
+	}
+
+	/**
+	 * Sets the executor that loading stages are run on, and the number of stages that may be running on it at once.
+	 *
+	 * @param executor the executor to run stages on
+	 * @param maxConcurrentStages the maximum number of stages that may be submitted to the executor at once
+	 * @return this loader
+	 * @see #stageExecutor(Executor)
+	 */
+	public ModLoader stageExecutor(Executor executor, int maxConcurrentStages) {
+		if (maxConcurrentStages < 1) {
+			throw new IllegalArgumentException("At least one stage must be allowed to run");
+		}
+
+		this.stageExecutor = executor;
+		this.stageParallelism = maxConcurrentStages;
+		return this;
+	}
+
+	/**
+	 * Runs all loading stages on virtual threads. This is suited to mods whose stages mostly block on I/O. If virtual
+	 * threads are not supported by the runtime a pool of platform threads is used instead.
+	 *
+	 * @param maxConcurrentStages the maximum number of stages that may run at once
+	 * @return this loader
+	 */
+	public ModLoader virtualThreadStages(int maxConcurrentStages) {
+		return stageExecutor(StageExecutors.virtualThreads(maxConcurrentStages), maxConcurrentStages);
+	}
+
+	/**
+	 * Sets the executor that stages marked as {@link LoadingStage#blocking() blocking} are run on. If this is not set
+	 * blocking stages are run in the same way as any other stage.
+	 *
+	 * @param executor the executor to run blocking stages on, which may not be null
+	 * @param maxConcurrentStages the maximum number of blocking stages that may run at once
+	 * @return this loader
+	 */
+	public ModLoader blockingStageExecutor(Executor executor, int maxConcurrentStages) {
+		this.blockingStageExecutor = new BoundedExecutor(Objects.requireNonNull(executor), maxConcurrentStages);
+		this.blockingStageParallelism = maxConcurrentStages;
+		return this;
+	}
+
+	/**
+	 * Runs stages marked as {@link LoadingStage#blocking() blocking} on virtual threads. If virtual threads are not
+	 * supported by the runtime a pool of platform threads is used instead.
+	 *
+	 * @param maxConcurrentStages the maximum number of blocking stages that may run at once
+	 * @return this loader
+	 */
+	public ModLoader blockingStagesOnVirtualThreads(int maxConcurrentStages) {
+		this.blockingStageExecutor = StageExecutors.blockingVirtualThreads(maxConcurrentStages);
+		this.blockingStageParallelism = maxConcurrentStages;
+		return this;
+	}
+
+	/**
+	 * Sets the policy used to pick which stage to start when several stages are ready to run. By default the stages
+	 * with the longest chain of stages waiting on them are started first.
+	 *
+	 * @param priority the policy to use
+	 * @return this loader
+	 */
+	public ModLoader stagePriority(StagePriority priority) {
+		this.stagePriority = Objects.requireNonNull(priority);
+		return this;
+	}
+
+	/**
+	 * Sets a file that the run time of each loading stage is recorded in. Durations recorded by previous runs are used
+	 * to estimate the length of each chain of stages, so that with the default {@link StagePriorities#CRITICAL_PATH}
+	 * priority the longest chains are started first. The file is created if it does not exist, and is updated after
+	 * each successful load.
+	 *
+	 * @param file the profile file
+	 * @return this loader
+	 */
+	public ModLoader stageProfile(Path file) {
+		this.stageProfileFile = file;
+		return this;
+	}
+
+	/**
+	 * Sets the search used to select the version of each mod. By default {@link SelectionStrategy#BACKTRACKING} is used.
+	 *
+	 * @param strategy the search to use
+	 * @return this loader
+	 */
+	public ModLoader selectionStrategy(SelectionStrategy strategy) {
+		this.selectionStrategy = Objects.requireNonNull(strategy);
+		return this;
+	}
+
+	/**
+	 * Sets a file that the selected mods are locked in. If the file holds a selection for the same root requirements
+	 * and selection strategy that is still available and still meets every requirement, it is used without solving the
+	 * dependency graph.
+	 * Otherwise the graph is solved, and the new selection is written to the file.
+	 *
+	 * @param file the lock file
+	 * @return this loader
+	 */
+	public ModLoader lockFile(Path file) {
+		this.lockFile = file;
+		return this;
+	}
+
 	/**
 	 * Loads the network of mods
 	 *
@@ -42,9 +192,18 @@ public final class ModLoader {
 	}
 
 	private void solveDependencyGraph(Collection<ModDependency> rootRequirements) throws ModLoadingException {
-		VersionSelector selector = new VersionSelector(source, rootRequirements);
+		var selectedModInfos = lockFile == null ? null : ModLockFile.read(lockFile, source, rootRequirements, selectionStrategy);
+
+		if (selectedModInfos == null) {
+			VersionSelector selector = new VersionSelector(source, rootRequirements).strategy(selectionStrategy);
+
+			selectedModInfos = selector.selectModVersions();
+
+			if (lockFile != null) {
+				ModLockFile.write(lockFile, selectedModInfos, source, rootRequirements, selectionStrategy);
+			}
+		}
 
-		var selectedModInfos = selector.selectModVersions();
 		var allLayers = new ArrayList<ModuleLayer>();
 
 		modLayers = new HashMap<>();
@@ -61,7 +220,7 @@ public final class ModLoader {
 		var allConfigurations = layers.stream().map(ModuleLayer::configuration).collect(Collectors.toList());
 		var childOfAllConfig = Configuration.resolve(ModuleFinder.of(), allConfigurations, ModuleFinder.of(), Collections.emptyList());
 		childOfAllLayer = ModuleLayer.defineModulesWithOneLoader(childOfAllConfig, layers, ClassLoader.getSystemClassLoader()).layer();
-		serviceLoaders = new HashMap<>();
+		serviceClassesUsed = ConcurrentHashMap.newKeySet();
 	}
 
 	private ModuleLayer loadMod(ModInfo modInfo, Map<String, ModInfo> selectedModInfos) {
@@ -114,32 +273,71 @@ public final class ModLoader {
 			stages.add(mod.endStage());
 		}
 
+		assignBatchHandlers(stages);
+
+		var index = new StageIndex(stages);
+
 		for (var stage : stages) {
-			stage.computeExecutionTree(stages);
+			stage.computeExecutionTree(index);
 		}
 
-		Collection<LoadingStage> roots = new ArrayList<>();
+		stages.addAll(index.barriers());
 
-		// Executing corrupts the root field. Query the field first
-		for (var stage : stages) {
-			if (stage.root()) {
-				roots.add(stage);
-			}
+		StageProfile profile = null;
+
+		if (stageProfileFile != null) {
+			profile = StageProfile.load(stageProfileFile);
+			profile.applyTo(stages);
 		}
 
 		// Load mods
-		for (var root : roots) {
-			root.execute();
-		}
+		new StageScheduler(stageExecutor, stageParallelism, blockingStageExecutor, blockingStageParallelism, stagePriority, profile).execute(stages);
 
 		// Find any mods that didn't load
 		var deadlockedMods = stages.stream()
-				.filter(s -> !s.root())
+				.filter(s -> !s.root() && !s.isBarrier())
 				.collect(Collectors.toList());
 
 		if (!deadlockedMods.isEmpty()) {
 			throw new ModDeadlockException(deadlockedMods);
 		}
+
+		if (profile != null) {
+			profile.save();
+		}
+	}
+
+	/**
+	 * Passes each contribution to the batch handler declared for its name.
+	 *
+	 * @throws ModLoadingException if two mods handle the same name, or a contribution has no handler
+	 */
+	private void assignBatchHandlers(Collection<LoadingStage> stages) throws ModLoadingException {
+		Map<LoadingStageName, Mod> handlerMods = new HashMap<>();
+
+		for (var mod : loadedMods.values()) {
+			for (var name : mod.batchHandlers().keySet()) {
+				var existing = handlerMods.putIfAbsent(name, mod);
+
+				if (existing != null) {
+					throw new ModLoadingException(String.format("Both %s and %s handle the batched stage '%s'", existing, mod, name));
+				}
+			}
+		}
+
+		for (var stage : stages) {
+			if (!stage.isContribution()) {
+				continue;
+			}
+
+			var handlerMod = handlerMods.get(stage.stageName());
+
+			if (handlerMod == null) {
+				throw new ModLoadingException(String.format("No mod handles the batched stage '%s' contributed to by %s", stage.stageName(), stage.mod()));
+			}
+
+			stage.batchHandler(handlerMod, handlerMod.batchHandlers().get(stage.stageName()));
+		}
 	}
 
 	/**
@@ -153,28 +351,32 @@ public final class ModLoader {
 	}
 
 	Mod currentlyLoadingMod() {
-		return currentlyLoadingMod;
+		return currentlyLoadingMod.get();
 	}
 
 	void signalIsLoading(Mod mod) {
-		currentlyLoadingMod = mod;
+		currentlyLoadingMod.set(mod);
+	}
+
+	void signalFinishedLoading() {
+		currentlyLoadingMod.remove();
 	}
 
 	/**
 	 * Gets a service loader that returns all service providers loaded currently. This loader will load from all classpath
-	 * sources and loaded mods.
+	 * sources and loaded mods. This method may be called from several threads at once, each call returns a new loader.
 	 *
 	 * @param serviceClass the class to load services for
 	 * @param <TYPE> the type of the service provider
 	 * @return a service loader that will load from all mod and classpath sources.
 	 */
-	@SuppressWarnings("unchecked")
 	<TYPE> ServiceLoader<TYPE> serviceLoader(Class<TYPE> serviceClass) {
-		return (ServiceLoader<TYPE>) serviceLoaders.computeIfAbsent(serviceClass, this::createServiceClass);
-	}
+		if (!serviceClassesUsed.contains(serviceClass)) {
+			// The use is recorded after it is added, so that no thread loads the service before it may be used
+			ModLoader.class.getModule().addUses(serviceClass);
+			serviceClassesUsed.add(serviceClass);
+		}
 
-	private <TYPE> ServiceLoader<TYPE> createServiceClass(Class<TYPE> serviceClass) {
-		ModLoader.class.getModule().addUses(serviceClass);
 		return ServiceLoader.load(childOfAllLayer, serviceClass);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,228 @@
+package brownshome.modding;
+
+import browngu.logging.Logger;
+import browngu.logging.Severity;
+import brownshome.modding.dependencygraph.SelectionStrategy;
+import brownshome.modding.modsource.ModSource;
+import brownshome.modding.util.AnyMod;
+import brownshome.modding.util.DependencyRules;
+import brownshome.modding.util.RuleModDependency;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A record of the mods selected by a previous run of the loader, so that the same selection can be reused without
+ * solving the dependency graph again.
+ * <br>
+ * The first line of the file holds a hash of the root requirements and the name of the selection strategy. Each
+ * following line holds the name, version, module name and source of one selected mod, separated by tabs. A lock file is
+ * only used if the root requirements and strategy are unchanged, every locked mod is still available from the same
+ * source, and the locked mods meet every requirement. A lock file that cannot be read is ignored.
+ * <br>
+ * The requirements are hashed from the name, rule and version of each requirement. Only {@link AnyMod} requirements,
+ * and {@link RuleModDependency} requirements using one of the {@link DependencyRules}, have such a form, so a selection
+ * made for any other requirement is never locked.
+ */
+final class ModLockFile {
+	private static final String REQUIREMENTS_PREFIX = "requirements\t";
+
+	private ModLockFile() { }
+
+	/**
+	 * Reads the locked selection from a file and checks that it is still valid.
+	 *
+	 * @return the selected mods by name, or null if the file does not exist or the selection is no longer valid
+	 */
+	static Map<String, ModInfo> read(Path file, ModSource source, Collection<ModDependency> rootRequirements, SelectionStrategy strategy) {
+		var header = header(rootRequirements, strategy);
+
+		if (header == null || !Files.exists(file)) {
+			return null;
+		}
+
+		List<String> lines;
+
+		try {
+			lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			Logger.logger().log(Severity.INFO, "Unable to read lock file '%s': %s", file, e);
+			return null;
+		}
+
+		if (lines.isEmpty() || !lines.get(0).equals(header)) {
+			Logger.logger().log(Severity.INFO, "The root requirements or strategy have changed since lock file '%s' was written", file);
+			return null;
+		}
+
+		Map<String, ModInfo> selected = new HashMap<>();
+
+		for (var line : lines.subList(1, lines.size())) {
+			var fields = line.split("\t", -1);
+
+			if (fields.length != 4) {
+				Logger.logger().log(Severity.INFO, "Malformed line '%s' in lock file '%s'", line, file);
+				return null;
+			}
+
+			var info = findLocked(source, fields[0], fields[1], fields[2], fields[3]);
+
+			if (info == null) {
+				Logger.logger().log(Severity.INFO, "Locked mod %s@%s is no longer available", fields[0], fields[1]);
+				return null;
+			}
+
+			selected.put(info.name(), info);
+		}
+
+		if (!isValidSelection(selected, rootRequirements)) {
+			Logger.logger().log(Severity.INFO, "The mods in lock file '%s' no longer meet their requirements", file);
+			return null;
+		}
+
+		return selected;
+	}
+
+	/**
+	 * Writes a selection to a file, replacing any previous selection.
+	 */
+	static void write(Path file, Map<String, ModInfo> selected, ModSource source, Collection<ModDependency> rootRequirements, SelectionStrategy strategy) {
+		var header = header(rootRequirements, strategy);
+
+		if (header == null) {
+			Logger.logger().log(Severity.INFO, "Not writing lock file '%s', as the root requirements %s cannot be hashed", file, rootRequirements);
+			return;
+		}
+
+		var lines = new ArrayList<String>(selected.size() + 1);
+		lines.add(header);
+
+		for (var info : new TreeMap<>(selected).values()) {
+			lines.add(String.join("\t", clean(info.name()), clean(info.version().toString()), clean(String.valueOf(info.moduleName())), clean(source.sourceIdentity(info))));
+		}
+
+		try {
+			var parent = file.toAbsolutePath().getParent();
+
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+
+			Files.write(file, lines, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			Logger.logger().log(Severity.INFO, "Unable to write lock file '%s': %s", file, e);
+		}
+	}
+
+	private static ModInfo findLocked(ModSource source, String name, String version, String moduleName, String sourceIdentity) {
+		for (var info : source.availableMods(name)) {
+			if (clean(info.version().toString()).equals(version)
+					&& clean(String.valueOf(info.moduleName())).equals(moduleName)
+					&& clean(source.sourceIdentity(info)).equals(sourceIdentity)) {
+				return info;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns true if every requirement of the roots and of the selected mods is met, and every selected mod is needed
+	 * by the roots.
+	 */
+	private static boolean isValidSelection(Map<String, ModInfo> selected, Collection<ModDependency> rootRequirements) {
+		Set<String> needed = new HashSet<>();
+		Deque<ModDependency> requirements = new ArrayDeque<>(rootRequirements);
+
+		while (!requirements.isEmpty()) {
+			var requirement = requirements.poll();
+			var info = selected.get(requirement.modName());
+
+			if (info == null || !requirement.isMetBy(info.version())) {
+				return false;
+			}
+
+			if (needed.add(info.name())) {
+				requirements.addAll(info.dependencies());
+			}
+		}
+
+		return needed.size() == selected.size();
+	}
+
+	/**
+	 * Returns the first line of a lock file, or null if the requirements have no canonical form
+	 */
+	private static String header(Collection<ModDependency> rootRequirements, SelectionStrategy strategy) {
+		var hash = hash(rootRequirements);
+
+		return hash == null ? null : String.join("\t", REQUIREMENTS_PREFIX + hash, strategy.name());
+	}
+
+	/**
+	 * Hashes the root requirements, ignoring their order
+	 *
+	 * @return the hash, or null if a requirement has no canonical form
+	 */
+	private static String hash(Collection<ModDependency> rootRequirements) {
+		var descriptions = new ArrayList<String>();
+
+		for (var requirement : rootRequirements) {
+			var description = canonicalForm(requirement);
+
+			if (description == null) {
+				return null;
+			}
+
+			descriptions.add(description);
+		}
+
+		Collections.sort(descriptions);
+
+		try {
+			var digest = MessageDigest.getInstance("SHA-256")
+					.digest(String.join("\n", descriptions).getBytes(StandardCharsets.UTF_8));
+
+			var result = new StringBuilder();
+
+			for (var b : digest) {
+				result.append(String.format("%02x", b));
+			}
+
+			return result.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Returns the name, rule and version of a requirement separated by tabs, or null if it has no canonical form
+	 */
+	private static String canonicalForm(ModDependency requirement) {
+		if (requirement instanceof AnyMod) {
+			return String.join("\t", clean(requirement.modName()), "ANY", "");
+		}
+
+		if (requirement instanceof RuleModDependency) {
+			var rule = ((RuleModDependency) requirement).rule();
+
+			if (rule instanceof DependencyRules) {
+				var version = ((RuleModDependency) requirement).version();
+				return String.join("\t", clean(requirement.modName()), ((DependencyRules) rule).name(), clean(version.toString()));
+			}
+		}
+
+		return null;
+	}
+
+	/** Removes the characters that are used to separate fields and entries */
+	private static String clean(String field) {
+		return field.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+}
@@ -27,6 +27,15 @@ public abstract class ModVersion implements Comparable<ModVersion> {
 
 	@Override
 	public final int compareTo(ModVersion other) {
+		return compareVersion(other);
+	}
+
+	/**
+	 * Compares this version to another version, returning a positive number if this version is newer. Subclasses may
+	 * override this to compare two versions of their own kind in a single pass, but must give the same order as
+	 * {@link #isNewerThan}.
+	 */
+	protected int compareVersion(ModVersion other) {
 		if (this.isNewerThan(other)) {
 			return 1;
 		}
@@ -0,0 +1,55 @@
+package brownshome.modding;
+
+import java.util.Objects;
+
+/**
+ * A set of permits shared by loading stages that use the same non-thread-safe resource. A stage that uses a group
+ * holds one of its permits while it runs, so at most {@link #permits()} stages that use the group run at once. This
+ * limits which stages overlap, without forcing an order on them.
+ * <br>
+ * Groups are compared by identity, mods that need to share a group should share the same instance.
+ *
+ * @see LoadingStage#uses(ResourceGroup)
+ */
+public final class ResourceGroup {
+	private final String name;
+	private final int permits;
+
+	/**
+	 * Creates a group.
+	 * @param name a name for the group, used for debugging
+	 * @param permits the number of stages that may use the group at once
+	 */
+	public ResourceGroup(String name, int permits) {
+		if (permits < 1) {
+			throw new IllegalArgumentException("A resource group must have at least one permit");
+		}
+
+		this.name = Objects.requireNonNull(name);
+		this.permits = permits;
+	}
+
+	/**
+	 * Creates a group that only one stage may use at a time.
+	 * @param name a name for the group, used for debugging
+	 */
+	public static ResourceGroup exclusive(String name) {
+		return new ResourceGroup(name, 1);
+	}
+
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * The number of stages that may use this group at once
+	 */
+	public int permits() {
+		return permits;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[%d]", name, permits);
+	}
+}
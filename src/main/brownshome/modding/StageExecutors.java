@@ -0,0 +1,79 @@
+package brownshome.modding;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Helper methods for creating the executors that loading stages are run on.
+ */
+final class StageExecutors {
+	/**
+	 * The executors shared by every loader that runs stages on virtual threads. They are never shut down, as they hold
+	 * no threads while they are idle, and their threads do not keep the JVM alive.
+	 */
+	private static final class VirtualThreads {
+		static final Executor EXECUTOR = createVirtualThreadExecutor("Loading stage");
+	}
+
+	private static final class BlockingVirtualThreads {
+		static final Executor EXECUTOR = createVirtualThreadExecutor("Blocking loading stage");
+	}
+
+	private StageExecutors() {  }
+
+	/**
+	 * Returns an executor that runs each task on a virtual thread, with at most {@code maxConcurrentStages} tasks
+	 * running at once. Virtual threads are looked up at runtime, as they are not available on all supported runtimes.
+	 * If they are not available a pool of daemon threads is used instead. The underlying executor is shared by all
+	 * callers, so no executor needs to be shut down once loading finishes.
+	 */
+	static Executor virtualThreads(int maxConcurrentStages) {
+		return new BoundedExecutor(VirtualThreads.EXECUTOR, maxConcurrentStages);
+	}
+
+	/**
+	 * Returns an executor for blocking stages that runs each task on a virtual thread, as {@link #virtualThreads(int)}
+	 * does. If virtual threads are not available its pool is kept apart from the one used for other stages, so that the
+	 * two kinds of stage can be told apart by thread name.
+	 */
+	static Executor blockingVirtualThreads(int maxConcurrentStages) {
+		return new BoundedExecutor(BlockingVirtualThreads.EXECUTOR, maxConcurrentStages);
+	}
+
+	/**
+	 * Returns the number of stages that an executor can run at once. This is the limit of a bounded executor, the
+	 * parallelism of a fork-join pool or the maximum size of a thread pool. For any other executor it is the number of
+	 * processors.
+	 */
+	static int parallelism(Executor executor) {
+		if (executor instanceof BoundedExecutor) {
+			return ((BoundedExecutor) executor).maxRunning();
+		}
+
+		if (executor instanceof ForkJoinPool) {
+			return ((ForkJoinPool) executor).getParallelism();
+		}
+
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+		}
+
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private static Executor createVirtualThreadExecutor(String fallbackThreadName) {
+		try {
+			return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			// Idle threads in a cached pool are removed after a minute
+			return Executors.newCachedThreadPool(task -> {
+				var thread = new Thread(task, fallbackThreadName);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package brownshome.modding;
+
+import java.util.*;
+
+/**
+ * An index of loading stages by name, and by mod and name. This is used to quickly find the stages that a stage is
+ * ordered against when the execution tree is built.
+ * <br>
+ * Ordering against every stage with a name is done through barrier stages, which are created on demand. A barrier
+ * joins the edges of all stages with a name, so N stages ordered against N stages need O(N) edges rather than N^2.
+ */
+final class StageIndex {
+	private final Set<LoadingStage> stages;
+	private final Map<LoadingStageName, List<LoadingStage>> byName = new HashMap<>();
+	private final Map<Mod, Map<LoadingStageName, List<LoadingStage>>> byModAndName = new HashMap<>();
+
+	/** The mods that have a stage with each name, in the order that they were first seen */
+	private final Map<LoadingStageName, List<Mod>> modsByName = new HashMap<>();
+
+	private final Map<LoadingStageName, LoadingStage> completionBarriers = new HashMap<>();
+	private final Map<LoadingStageName, LoadingStage> startBarriers = new HashMap<>();
+	private final Map<LoadingStageName, LoadingStage[][]> completionExclusionBarriers = new HashMap<>();
+	private final Map<LoadingStageName, LoadingStage[][]> startExclusionBarriers = new HashMap<>();
+
+	private final List<LoadingStage> barriers = new ArrayList<>();
+
+	StageIndex(Collection<LoadingStage> stages) {
+		this.stages = new HashSet<>(stages);
+
+		for (var stage : stages) {
+			byName.computeIfAbsent(stage.stageName(), unused -> new ArrayList<>()).add(stage);
+
+			var stagesOfMod = byModAndName.computeIfAbsent(stage.mod(), unused -> new HashMap<>())
+					.computeIfAbsent(stage.stageName(), unused -> new ArrayList<>());
+
+			if (stagesOfMod.isEmpty()) {
+				modsByName.computeIfAbsent(stage.stageName(), unused -> new ArrayList<>()).add(stage.mod());
+			}
+
+			stagesOfMod.add(stage);
+		}
+	}
+
+	/**
+	 * Returns true if the stage is in this index
+	 */
+	boolean contains(LoadingStage stage) {
+		return stages.contains(stage);
+	}
+
+	/**
+	 * Returns all stages with the given name
+	 */
+	List<LoadingStage> stagesNamed(LoadingStageName name) {
+		return byName.getOrDefault(name, List.of());
+	}
+
+	/**
+	 * Returns the stages of a mod that have the given name
+	 */
+	List<LoadingStage> stagesNamed(Mod mod, LoadingStageName name) {
+		return byModAndName.getOrDefault(mod, Collections.emptyMap()).getOrDefault(name, List.of());
+	}
+
+	/**
+	 * Returns all of the barrier stages that have been created by this index
+	 */
+	List<LoadingStage> barriers() {
+		return barriers;
+	}
+
+	/**
+	 * Returns a barrier that runs once every stage with the given name has completed
+	 */
+	LoadingStage completionBarrier(LoadingStageName name) {
+		return completionBarriers.computeIfAbsent(name, unused -> {
+			var barrier = newBarrier(name);
+
+			for (var stage : stagesNamed(name)) {
+				LoadingStage.addEdge(stage, barrier);
+			}
+
+			return barrier;
+		});
+	}
+
+	/**
+	 * Returns a barrier that must complete before any stage with the given name is run
+	 */
+	LoadingStage startBarrier(LoadingStageName name) {
+		return startBarriers.computeIfAbsent(name, unused -> {
+			var barrier = newBarrier(name);
+
+			for (var stage : stagesNamed(name)) {
+				LoadingStage.addEdge(barrier, stage);
+			}
+
+			return barrier;
+		});
+	}
+
+	/**
+	 * Returns barriers that, together, run once every stage with the given name that does not belong to the mod has
+	 * completed.
+	 */
+	Collection<LoadingStage> completionBarriersExcept(Mod mod, LoadingStageName name) {
+		var position = positionOf(mod, name);
+
+		if (position == -1) {
+			return List.of(completionBarrier(name));
+		}
+
+		var barriers = completionExclusionBarriers.computeIfAbsent(name, unused -> createExclusionBarriers(name, true));
+
+		return excluding(barriers, position);
+	}
+
+	/**
+	 * Returns barriers that, together, must complete before any stage with the given name that does not belong to the
+	 * mod is run.
+	 */
+	Collection<LoadingStage> startBarriersExcept(Mod mod, LoadingStageName name) {
+		var position = positionOf(mod, name);
+
+		if (position == -1) {
+			return List.of(startBarrier(name));
+		}
+
+		var barriers = startExclusionBarriers.computeIfAbsent(name, unused -> createExclusionBarriers(name, false));
+
+		return excluding(barriers, position);
+	}
+
+	private int positionOf(Mod mod, LoadingStageName name) {
+		return modsByName.getOrDefault(name, List.of()).indexOf(mod);
+	}
+
+	/**
+	 * Selects the prefix barrier covering all mods before the position, and the suffix barrier covering all mods after
+	 * it.
+	 */
+	private static Collection<LoadingStage> excluding(LoadingStage[][] barriers, int position) {
+		var prefixes = barriers[0];
+		var suffixes = barriers[1];
+
+		var result = new ArrayList<LoadingStage>(2);
+
+		if (position > 0) {
+			result.add(prefixes[position - 1]);
+		}
+
+		if (position < suffixes.length - 1) {
+			result.add(suffixes[position + 1]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates chains of barriers covering the stages of each prefix and each suffix of the mods that have a stage with
+	 * the given name. Any set of mods excluding a single mod is covered by one prefix and one suffix.
+	 *
+	 * @param completion if true the barriers run after the stages they cover, otherwise they run before them.
+	 * @return the prefix barriers, followed by the suffix barriers
+	 */
+	private LoadingStage[][] createExclusionBarriers(LoadingStageName name, boolean completion) {
+		var mods = modsByName.get(name);
+		var prefixes = new LoadingStage[mods.size()];
+		var suffixes = new LoadingStage[mods.size()];
+
+		for (int i = 0; i < mods.size(); i++) {
+			prefixes[i] = newBarrier(name);
+			coverStages(prefixes[i], stagesNamed(mods.get(i), name), completion);
+
+			if (i > 0) {
+				chain(prefixes[i - 1], prefixes[i], completion);
+			}
+		}
+
+		for (int i = mods.size() - 1; i >= 0; i--) {
+			suffixes[i] = newBarrier(name);
+			coverStages(suffixes[i], stagesNamed(mods.get(i), name), completion);
+
+			if (i < mods.size() - 1) {
+				chain(suffixes[i + 1], suffixes[i], completion);
+			}
+		}
+
+		return new LoadingStage[][] { prefixes, suffixes };
+	}
+
+	private static void coverStages(LoadingStage barrier, Collection<LoadingStage> stages, boolean completion) {
+		for (var stage : stages) {
+			if (completion) {
+				LoadingStage.addEdge(stage, barrier);
+			} else {
+				LoadingStage.addEdge(barrier, stage);
+			}
+		}
+	}
+
+	/**
+	 * Makes the outer barrier cover everything that the inner barrier covers
+	 */
+	private static void chain(LoadingStage inner, LoadingStage outer, boolean completion) {
+		if (completion) {
+			LoadingStage.addEdge(inner, outer);
+		} else {
+			LoadingStage.addEdge(outer, inner);
+		}
+	}
+
+	private LoadingStage newBarrier(LoadingStageName name) {
+		var barrier = LoadingStage.barrier(name);
+		barriers.add(barrier);
+		return barrier;
+	}
+}
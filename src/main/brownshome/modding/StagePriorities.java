@@ -0,0 +1,51 @@
+package brownshome.modding;
+
+import java.util.Collection;
+import java.util.function.ToLongFunction;
+
+public enum StagePriorities implements StagePriority {
+	/**
+	 * Starts stages in the order that they become ready
+	 */
+	READY_ORDER() {
+		@Override
+		public long priority(LoadingStage stage, Collection<LoadingStage> dependents, ToLongFunction<LoadingStage> priorityOf) {
+			return 0;
+		}
+	},
+
+	/**
+	 * Starts the stages with the longest chain of stages waiting on them first. If a stage profile was loaded the
+	 * length of a chain is the sum of the recorded run times of its stages, otherwise it is the number of stages in it.
+	 * Barrier stages inserted by the loader do not count towards the length of a chain.
+	 */
+	CRITICAL_PATH() {
+		@Override
+		public long priority(LoadingStage stage, Collection<LoadingStage> dependents, ToLongFunction<LoadingStage> priorityOf) {
+			long longestChain = 0;
+
+			for (var dependent : dependents) {
+				longestChain = Math.max(longestChain, priorityOf.applyAsLong(dependent));
+			}
+
+			return longestChain + stage.expectedDuration();
+		}
+	},
+
+	/**
+	 * Starts the stages with the most stages directly waiting on them first. Barrier stages inserted by the loader are
+	 * looked through, so a stage waited on by a barrier counts the stages waiting on that barrier.
+	 */
+	MOST_DEPENDENTS() {
+		@Override
+		public long priority(LoadingStage stage, Collection<LoadingStage> dependents, ToLongFunction<LoadingStage> priorityOf) {
+			long count = 0;
+
+			for (var dependent : dependents) {
+				count += dependent.isBarrier() ? priorityOf.applyAsLong(dependent) : 1;
+			}
+
+			return count;
+		}
+	};
+}
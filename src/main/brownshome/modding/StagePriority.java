@@ -0,0 +1,25 @@
+package brownshome.modding;
+
+import java.util.Collection;
+import java.util.function.ToLongFunction;
+
+/**
+ * Decides which loading stage is started first when several stages are ready to run.
+ *
+ * @see StagePriorities
+ */
+@FunctionalInterface
+public interface StagePriority {
+	/**
+	 * Computes the priority of a stage. When several stages are ready the stage with the highest priority is started
+	 * first, stages with equal priority are started in the order that they became ready.
+	 * <br>
+	 * Priorities are computed from the last stages to run backwards, so the priority of every dependent is known when
+	 * this method is called.
+	 *
+	 * @param stage the stage to compute the priority of
+	 * @param dependents the stages that cannot run until this stage completes
+	 * @param priorityOf a function returning the priority of any of the dependents
+	 */
+	long priority(LoadingStage stage, Collection<LoadingStage> dependents, ToLongFunction<LoadingStage> priorityOf);
+}
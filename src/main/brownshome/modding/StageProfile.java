@@ -0,0 +1,148 @@
+package brownshome.modding;
+
+import browngu.logging.Logger;
+import browngu.logging.Severity;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The recorded run times of loading stages from previous runs of the loader. Stages are keyed by the name and version of
+ * their mod, and by the name of the stage.
+ * <br>
+ * The profile is stored as a text file with one stage per line, with the mod name, mod version, stage name and duration
+ * in nanoseconds separated by tabs. A profile that cannot be read is treated as empty, as it is only used to improve
+ * the order that stages are run in.
+ */
+final class StageProfile {
+	private final Path file;
+
+	/** Durations read from the file */
+	private final Map<String, Long> recordedDurations;
+
+	/** Durations measured during this run */
+	private final Map<String, Long> measuredDurations = new ConcurrentHashMap<>();
+
+	private StageProfile(Path file, Map<String, Long> recordedDurations) {
+		this.file = file;
+		this.recordedDurations = recordedDurations;
+	}
+
+	/**
+	 * Reads a profile from a file. If the file does not exist an empty profile is returned.
+	 */
+	static StageProfile load(Path file) {
+		Map<String, Long> durations = new TreeMap<>();
+
+		if (Files.exists(file)) {
+			try {
+				for (var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+					int split = line.lastIndexOf('\t');
+
+					if (split == -1) {
+						continue;
+					}
+
+					try {
+						durations.put(line.substring(0, split), Long.parseLong(line.substring(split + 1)));
+					} catch (NumberFormatException nfe) {
+						// Ignore malformed lines, they will be overwritten when the profile is saved
+					}
+				}
+			} catch (IOException e) {
+				Logger.logger().log(Severity.INFO, "Unable to read stage profile '%s': %s", file, e);
+			}
+		}
+
+		return new StageProfile(file, durations);
+	}
+
+	/**
+	 * Sets the expected duration of each stage from this profile. Stages that have not been recorded are expected to take
+	 * the mean duration of the recorded stages.
+	 */
+	void applyTo(Collection<LoadingStage> stages) {
+		List<LoadingStage> unknownStages = new ArrayList<>();
+		long total = 0;
+		int known = 0;
+
+		for (var stage : stages) {
+			if (stage.isBarrier()) {
+				continue;
+			}
+
+			var duration = recordedDurations.get(key(stage));
+
+			if (duration == null) {
+				unknownStages.add(stage);
+			} else {
+				stage.expectedDuration(duration);
+				total += duration;
+				known++;
+			}
+		}
+
+		long mean = known == 0 ? 1 : Math.max(total / known, 1);
+
+		for (var stage : unknownStages) {
+			stage.expectedDuration(mean);
+		}
+	}
+
+	/**
+	 * Records the time that a stage took to run. This method may be called from any thread.
+	 */
+	void record(LoadingStage stage, long nanos) {
+		if (stage.isBarrier()) {
+			return;
+		}
+
+		// Stages of one mod that share a name are recorded as one
+		measuredDurations.merge(key(stage), nanos, Long::sum);
+	}
+
+	/**
+	 * Writes the durations recorded in this run to the profile file, keeping any entries for stages that were not run.
+	 */
+	void save() {
+		Map<String, Long> durations = new TreeMap<>(recordedDurations);
+		durations.putAll(measuredDurations);
+
+		var lines = new ArrayList<String>(durations.size());
+
+		for (var entry : durations.entrySet()) {
+			lines.add(entry.getKey() + '\t' + entry.getValue());
+		}
+
+		try {
+			var parent = file.toAbsolutePath().getParent();
+
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+
+			Files.write(file, lines, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			Logger.logger().log(Severity.INFO, "Unable to write stage profile '%s': %s", file, e);
+		}
+	}
+
+	private static String key(LoadingStage stage) {
+		var info = stage.mod().info();
+
+		return String.join("\t", clean(info.name()), clean(info.version().toString()), clean(String.valueOf(stage.stageName())));
+	}
+
+	/** Removes the characters that are used to separate fields and entries */
+	private static String clean(String field) {
+		return field.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+}
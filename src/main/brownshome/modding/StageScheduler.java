@@ -0,0 +1,444 @@
+package brownshome.modding;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executes a graph of loading stages. Stages that are ready to run are kept in a worklist ordered by a
+ * {@link StagePriority}, and the thread calling {@link #execute(Collection)} starts them in priority order. The work is
+ * iterative, so long chains of stages do not grow the stack.
+ * <br>
+ * If an executor is supplied stages are run on it, but no more stages are submitted to it than it has threads. The
+ * other ready stages stay in the worklist, and the one with the highest priority is started when a stage returns its
+ * thread, which it does once its action returns. Without an executor stages are run one at a time on the calling
+ * thread.
+ * <br>
+ * Stages that must run on the loader thread are always run on the calling thread, while other stages continue on the
+ * executor. No stage is started, and no completion is handled, while such a stage runs, so these stages are only run
+ * once every other ready stage has been started or is waiting for a thread or a permit.
+ * <br>
+ * A ready stage is only started once a permit is free in every {@link ResourceGroup} that it uses, otherwise it waits
+ * for one of the running stages holding a permit to complete.
+ * <br>
+ * Asynchronous stages are complete once their result completes, and hold no thread while they wait. Once a stage has
+ * failed the scheduler stops waiting for asynchronous stages, and cancels their results.
+ * <br>
+ * Contributions to a batched stage are not run individually. When one is started, every ready contribution with the
+ * same name is passed to the batch handler in a single call.
+ */
+final class StageScheduler {
+	/** A stage that is ready to run, ordered by priority and then by the order that it became ready */
+	private static final class ReadyStage implements Comparable<ReadyStage> {
+		final LoadingStage stage;
+		final long priority;
+		final long sequence;
+
+		ReadyStage(LoadingStage stage, long priority, long sequence) {
+			this.stage = stage;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(ReadyStage other) {
+			int result = Long.compare(other.priority, priority);
+
+			return result != 0 ? result : Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/** A message sent from a stage back to the scheduling thread */
+	private static final class StageEvent {
+		final LoadingStage stage;
+
+		/** The executor that the stage has returned its thread to, or null if the stage has completed */
+		final Target released;
+
+		/** Either a ModLoadingException or an Error, null if the stage succeeded */
+		final Throwable failure;
+
+		private StageEvent(LoadingStage stage, Target released, Throwable failure) {
+			this.stage = stage;
+			this.released = released;
+			this.failure = failure;
+		}
+
+		static StageEvent completed(LoadingStage stage, Throwable failure) {
+			return new StageEvent(stage, null, failure);
+		}
+
+		static StageEvent released(LoadingStage stage, Target target) {
+			return new StageEvent(stage, target, null);
+		}
+	}
+
+	/** An executor that stages are started on, and the number of its threads that stages may hold at once */
+	private static final class Target {
+		final Executor executor;
+		final int parallelism;
+
+		/** Ready stages that are waiting for a thread */
+		final List<ReadyStage> waiting = new ArrayList<>();
+
+		/** The number of stages that have been submitted, and have not yet returned their thread */
+		int inFlight = 0;
+
+		Target(Executor executor, int parallelism) {
+			this.executor = executor;
+			this.parallelism = parallelism;
+		}
+	}
+
+	/** Null if stages should be run on the scheduling thread */
+	private final Target executor;
+
+	/** Null if blocking stages should be run in the same way as all other stages */
+	private final Target blockingExecutor;
+
+	private final StagePriority priority;
+
+	/** Null if stage durations should not be recorded */
+	private final StageProfile profile;
+
+	private final Map<LoadingStage, Long> priorities = new HashMap<>();
+	private final PriorityQueue<ReadyStage> ready = new PriorityQueue<>();
+
+	/** Ready stages that must run on the loader thread, they are started once no other stage can be started */
+	private final PriorityQueue<ReadyStage> readyForLoaderThread = new PriorityQueue<>();
+
+	/** The number of permits from each resource group held by running stages */
+	private final Map<ResourceGroup, Integer> permitsInUse = new HashMap<>();
+
+	/** Ready contributions to batched stages, a single entry in the ready queue represents all of them */
+	private final Map<LoadingStageName, List<LoadingStage>> readyContributions = new HashMap<>();
+
+	/** Ready stages that are waiting for a permit from a resource group */
+	private final Map<ResourceGroup, List<ReadyStage>> waitingForPermit = new HashMap<>();
+	private final BlockingQueue<StageEvent> events = new LinkedBlockingQueue<>();
+
+	private long nextSequence = 0;
+	private int stagesRunning = 0;
+
+	/** The number of threads held by stages on any executor, a stage may complete before it returns its thread */
+	private int threadsHeld = 0;
+
+	/** The results of stages whose action has returned, but that have not completed */
+	private final Map<LoadingStage, CompletionStage<Void>> pending = new ConcurrentHashMap<>();
+
+	StageScheduler(Executor executor, int parallelism, Executor blockingExecutor, int blockingParallelism, StagePriority priority, StageProfile profile) {
+		this.executor = executor == null ? null : new Target(executor, parallelism);
+		this.blockingExecutor = blockingExecutor == null ? null : new Target(blockingExecutor, blockingParallelism);
+		this.priority = priority;
+		this.profile = profile;
+	}
+
+	/**
+	 * Executes all stages that can be reached from the root stages. This method blocks until every stage that can run
+	 * has completed, or a stage fails. Stages that cannot run due to a deadlock are left with outstanding parents.
+	 *
+	 * @param stages every stage in the graph
+	 * @throws ModLoadingException if any stage fails, or the thread is interrupted while waiting
+	 * @throws Error if a stage throws an error, it is rethrown unchanged
+	 */
+	void execute(Collection<LoadingStage> stages) throws ModLoadingException {
+		computePriorities(stages);
+
+		for (var stage : stages) {
+			if (stage.root()) {
+				markReady(stage);
+			}
+		}
+
+		Throwable failure = null;
+
+		while (true) {
+			// Handle finished stages first, so that the stages they release compete for the next start
+			var event = events.poll();
+
+			if (event == null) {
+				// No new stages are started once a stage has failed
+				if (failure == null && !ready.isEmpty()) {
+					dispatch(ready.poll());
+					continue;
+				}
+
+				if (failure == null && !readyForLoaderThread.isEmpty()) {
+					startWhenPermitted(readyForLoaderThread.poll(), null);
+					continue;
+				}
+
+				if (stagesRunning == 0 && threadsHeld == 0) {
+					break;
+				}
+
+				if (failure != null && threadsHeld == 0) {
+					// Only asynchronous stages are left, they may never complete so they are not waited for
+					cancelPending();
+					break;
+				}
+
+				try {
+					event = events.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ModLoadingException("Interrupted while waiting for loading stages to complete", e);
+				}
+			}
+
+			if (event.released != null) {
+				// The stages waiting for a thread compete for it by priority
+				event.released.inFlight--;
+				threadsHeld--;
+				ready.addAll(event.released.waiting);
+				event.released.waiting.clear();
+				continue;
+			}
+
+			stagesRunning--;
+			releasePermits(event.stage);
+
+			if (event.failure != null) {
+				if (failure == null) {
+					failure = event.failure;
+				}
+
+				continue;
+			}
+
+			for (var completed : event.stage.completedStages()) {
+				for (var child : completed.stagesWaiting()) {
+					if (child.signalParentCompleted()) {
+						markReady(child);
+					}
+				}
+			}
+		}
+
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+
+		if (failure != null) {
+			throw (ModLoadingException) failure;
+		}
+	}
+
+	/**
+	 * Starts a ready stage if a thread and every permit that it needs are free, otherwise it waits for them. Stages
+	 * that run on the loader thread are held back until no other stage can be started.
+	 */
+	private void dispatch(ReadyStage next) {
+		if (next.stage.isContribution()) {
+			next = takeBatch(next);
+		}
+
+		var target = targetOf(next.stage);
+
+		if (target != null && target.inFlight >= target.parallelism) {
+			target.waiting.add(next);
+			return;
+		}
+
+		if (next.stage.runsOnLoaderThread() && (executor != null || blockingExecutor != null)) {
+			// Nothing is started while this thread runs the stage, so the executors are given work first
+			readyForLoaderThread.add(next);
+			return;
+		}
+
+		startWhenPermitted(next, target);
+	}
+
+	/**
+	 * Starts a stage if every permit that it needs is free, otherwise it waits for them.
+	 */
+	private void startWhenPermitted(ReadyStage next, Target target) {
+		var unavailableGroup = unavailableGroup(next.stage);
+
+		if (unavailableGroup != null) {
+			waitingForPermit.computeIfAbsent(unavailableGroup, unused -> new ArrayList<>()).add(next);
+			return;
+		}
+
+		acquirePermits(next.stage);
+		start(next.stage, target);
+	}
+
+	/**
+	 * Cancels the results of asynchronous stages that have not completed. Only results that are a
+	 * {@link CompletableFuture} can be cancelled, the others are left running.
+	 */
+	private void cancelPending() {
+		for (var result : pending.values()) {
+			if (result instanceof CompletableFuture) {
+				((CompletableFuture<Void>) result).cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Returns the executor that a stage is run on, or null if it is run on the scheduling thread
+	 */
+	private Target targetOf(LoadingStage stage) {
+		if (stage.isBarrier() || stage.runsOnLoaderThread()) {
+			return null;
+		}
+
+		return stage.isBlocking() && blockingExecutor != null ? blockingExecutor : executor;
+	}
+
+	/**
+	 * Returns a resource group used by the stage that has no free permits, or null if every group has a free permit.
+	 */
+	private ResourceGroup unavailableGroup(LoadingStage stage) {
+		for (var group : stage.resourceGroups()) {
+			if (permitsInUse.getOrDefault(group, 0) >= group.permits()) {
+				return group;
+			}
+		}
+
+		return null;
+	}
+
+	private void acquirePermits(LoadingStage stage) {
+		for (var group : stage.resourceGroups()) {
+			permitsInUse.merge(group, 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Releases the permits held by a stage, and returns any stages waiting on those groups to the ready queue.
+	 */
+	private void releasePermits(LoadingStage stage) {
+		for (var group : stage.resourceGroups()) {
+			permitsInUse.merge(group, -1, Integer::sum);
+
+			var waiting = waitingForPermit.remove(group);
+
+			if (waiting != null) {
+				ready.addAll(waiting);
+			}
+		}
+	}
+
+	private void markReady(LoadingStage stage) {
+		if (stage.isContribution()) {
+			var contributions = readyContributions.computeIfAbsent(stage.stageName(), unused -> new ArrayList<>());
+			contributions.add(stage);
+
+			if (contributions.size() > 1) {
+				// The batch is already in the ready queue
+				return;
+			}
+		}
+
+		ready.add(new ReadyStage(stage, priorities.getOrDefault(stage, 0L), nextSequence++));
+	}
+
+	/**
+	 * Collects all of the ready contributions with the same name as the polled contribution into one batch stage.
+	 */
+	private ReadyStage takeBatch(ReadyStage polled) {
+		var contributions = readyContributions.remove(polled.stage.stageName());
+		long batchPriority = polled.priority;
+
+		for (var contribution : contributions) {
+			batchPriority = Math.max(batchPriority, priorities.getOrDefault(contribution, 0L));
+		}
+
+		return new ReadyStage(LoadingStage.batch(contributions), batchPriority, polled.sequence);
+	}
+
+	private void start(LoadingStage stage, Target target) {
+		stagesRunning++;
+
+		if (target == null) {
+			// The scheduling thread is the thread that is loading the mods
+			run(stage, null);
+			return;
+		}
+
+		target.inFlight++;
+		threadsHeld++;
+
+		try {
+			target.executor.execute(() -> run(stage, target));
+		} catch (RejectedExecutionException ree) {
+			target.inFlight--;
+			threadsHeld--;
+			events.add(StageEvent.completed(stage, new ModLoadingException("Unable to schedule " + stage, ree)));
+		}
+	}
+
+	private void run(LoadingStage stage, Target target) {
+		long start = System.nanoTime();
+
+		try {
+			var result = stage.startAction();
+			pending.put(stage, result);
+
+			// Asynchronous stages complete on whichever thread completes their result, no thread waits for them
+			result.whenComplete((unused, throwable) -> {
+				pending.remove(stage);
+
+				if (throwable != null) {
+					events.add(StageEvent.completed(stage, stage.asyncFailure(throwable)));
+					return;
+				}
+
+				if (profile != null) {
+					profile.record(stage, System.nanoTime() - start);
+				}
+
+				events.add(StageEvent.completed(stage, null));
+			});
+		} catch (ModLoadingException | Error e) {
+			events.add(StageEvent.completed(stage, e));
+		} catch (RuntimeException e) {
+			events.add(StageEvent.completed(stage, new ModLoadingException("Unexpected failure in " + stage, e)));
+		} finally {
+			if (target != null) {
+				events.add(StageEvent.released(stage, target));
+			}
+		}
+	}
+
+	/**
+	 * Computes the priority of each stage, visiting the stages in reverse topological order. Stages that are part of,
+	 * or lead to, a cycle are left with the default priority, as they will never all run.
+	 */
+	private void computePriorities(Collection<LoadingStage> stages) {
+		Map<LoadingStage, List<LoadingStage>> parents = new HashMap<>();
+		Map<LoadingStage, Integer> childrenLeft = new HashMap<>();
+		Deque<LoadingStage> finished = new ArrayDeque<>();
+
+		for (var stage : stages) {
+			childrenLeft.put(stage, stage.stagesWaiting().size());
+
+			if (stage.stagesWaiting().isEmpty()) {
+				finished.add(stage);
+			}
+
+			for (var child : stage.stagesWaiting()) {
+				parents.computeIfAbsent(child, unused -> new ArrayList<>()).add(stage);
+			}
+		}
+
+		while (!finished.isEmpty()) {
+			var stage = finished.poll();
+
+			priorities.put(stage, priority.priority(stage, stage.stagesWaiting(), s -> priorities.getOrDefault(s, 0L)));
+
+			for (var parent : parents.getOrDefault(stage, List.of())) {
+				if (childrenLeft.merge(parent, -1, Integer::sum) == 0) {
+					finished.add(parent);
+				}
+			}
+		}
+	}
+}
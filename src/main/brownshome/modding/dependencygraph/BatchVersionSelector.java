@@ -0,0 +1,125 @@
+package brownshome.modding.dependencygraph;
+
+import brownshome.modding.ModDependency;
+import brownshome.modding.ModInfo;
+import brownshome.modding.ModLoadingException;
+import brownshome.modding.modsource.ModSource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Selects mod versions for many independent sets of requirements against the same mod source.
+ * <br>
+ * The available versions of each mod are read from the mod source once, and the versions accepted by each dependency
+ * are computed once, then shared by every selection. Each selection runs as a separate task on an executor. The mod
+ * source may be queried from several threads at once, and its available mods must not change while this selector is
+ * in use.
+ */
+public final class BatchVersionSelector {
+	private final ModSource modSource;
+	private final Executor executor;
+	private final Map<String, ModVersions> modVersions = new ConcurrentHashMap<>();
+
+	private SelectionStrategy strategy = SelectionStrategy.CONFLICT_DRIVEN;
+
+	/**
+	 * Creates a selector that runs on the common fork-join pool
+	 */
+	public BatchVersionSelector(ModSource modSource) {
+		this(modSource, ForkJoinPool.commonPool());
+	}
+
+	public BatchVersionSelector(ModSource modSource, Executor executor) {
+		this.modSource = modSource;
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the search used to select the versions. By default {@link SelectionStrategy#CONFLICT_DRIVEN} is used. The
+	 * {@link SelectionStrategy#BACKTRACKING} search does not share any work between selections.
+	 * {@link SelectionStrategy#PORTFOLIO} is not supported, as the selections already run concurrently, and it would only
+	 * add a backtracking search to each task whose answer is used only if the conflict-driven search fails.
+	 *
+	 * @param strategy the search to use
+	 * @return this selector
+	 * @throws IllegalArgumentException if the strategy is {@link SelectionStrategy#PORTFOLIO}
+	 */
+	public BatchVersionSelector strategy(SelectionStrategy strategy) {
+		if (Objects.requireNonNull(strategy) == SelectionStrategy.PORTFOLIO) {
+			throw new IllegalArgumentException("The portfolio strategy cannot be used for batch selection");
+		}
+
+		this.strategy = strategy;
+		return this;
+	}
+
+	/**
+	 * Selects the versions that meet a set of requirements.
+	 *
+	 * @return a future that completes with the selected mods by name, or completes exceptionally with a
+	 *         {@link ModLoadingException} if the requirements cannot be met
+	 */
+	public CompletableFuture<Map<String, ModInfo>> select(Collection<ModDependency> requirements) {
+		var result = new CompletableFuture<Map<String, ModInfo>>();
+		var strategy = this.strategy;
+
+		executor.execute(() -> {
+			try {
+				result.complete(selectNow(requirements, strategy));
+			} catch (Throwable t) {
+				result.completeExceptionally(t);
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Selects the versions for each set of requirements. The selections run concurrently, and the failure of one does
+	 * not affect the others.
+	 *
+	 * @return a future for each set of requirements, in the same order
+	 * @see #select(Collection)
+	 */
+	public List<CompletableFuture<Map<String, ModInfo>>> selectAll(Collection<? extends Collection<ModDependency>> requirementSets) {
+		var result = new ArrayList<CompletableFuture<Map<String, ModInfo>>>(requirementSets.size());
+
+		for (var requirements : requirementSets) {
+			result.add(select(requirements));
+		}
+
+		return result;
+	}
+
+	private Map<String, ModInfo> selectNow(Collection<ModDependency> requirements, SelectionStrategy strategy) throws ModLoadingException {
+		if (strategy == SelectionStrategy.BACKTRACKING) {
+			return new VersionSelector(modSource, requirements).selectModVersions();
+		}
+
+		var catalog = new ModCatalog(this::modVersions);
+
+		if (strategy == SelectionStrategy.MINIMAL) {
+			return new MinimalVersionSolver(catalog, requirements).solve();
+		}
+
+		var solver = new ConflictDrivenSolver(catalog, requirements);
+
+		try {
+			return solver.solve();
+		} catch (UnsolvableModGraphException udge) {
+			throw new ModLoadingException(String.format("Unable to satisfy requirements %s. Available mods: %s.", requirements, solver), udge);
+		}
+	}
+
+	private ModVersions modVersions(String name) {
+		return modVersions.computeIfAbsent(name, key -> new ModVersions(key, modSource.availableMods(key)));
+	}
+}
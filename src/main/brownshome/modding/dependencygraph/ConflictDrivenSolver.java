@@ -0,0 +1,647 @@
+package brownshome.modding.dependencygraph;
+
+import brownshome.modding.ModDependency;
+import brownshome.modding.ModInfo;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Selects mod versions using conflict-driven search, in the style of PubGrub.
+ * <br>
+ * The state of the search is a set of possible versions for each mod, narrowed by a list of assignments. Each mod has
+ * one extra possible value, directly after its versions, that stands for the mod not being installed. The rules of the
+ * problem are stored as incompatibilities, sets of terms that cannot all be true at once. When all but one term of an
+ * incompatibility is true, the last term is ruled out. When all of the terms are true the search has hit a conflict,
+ * and a new incompatibility is learned by resolving the conflict against the causes of the assignments that led to
+ * it. The search then jumps back to the first point where the learned incompatibility rules out a version.
+ * <br>
+ * Mods are referred to by their id in a {@link ModCatalog}, and the state of each mod and each assignment is kept in
+ * arrays indexed by those ids. The required mods that have not been decided are kept in a heap ordered by the number of
+ * versions that they have left, which is updated whenever the domain of a mod changes.
+ */
+final class ConflictDrivenSolver {
+	/** A set of terms, each stating that the value of a mod is in a set, that cannot all be true at once */
+	private static final class Incompatibility {
+		final int[] mods;
+		final BitSet[] values;
+
+		/** The values of each mod that are not in the term */
+		final BitSet[] excluded;
+
+		Incompatibility(int[] mods, BitSet[] values, BitSet[] excluded) {
+			this.mods = mods;
+			this.values = values;
+			this.excluded = excluded;
+		}
+
+		int termFor(int mod) {
+			for (int i = 0; i < mods.length; i++) {
+				if (mods[i] == mod) {
+					return i;
+				}
+			}
+
+			return -1;
+		}
+	}
+
+	private static final int[] NO_MODS = new int[0];
+	private static final BitSet[] NO_SETS = new BitSet[0];
+
+	private final ModCatalog catalog;
+	private final Collection<ModDependency> externalRequirements;
+
+	/** Versions to choose in place of the highest version where possible, by mod name */
+	private Map<String, ModInfo> preferredVersions = Collections.emptyMap();
+
+	private BooleanSupplier cancelled = () -> false;
+
+	// Mod state, indexed by mod id
+	private BitSet[] everything = NO_SETS;
+	private BitSet[] domains = NO_SETS;
+	private BitSet[] dependenciesAdded = NO_SETS;
+	private int[] lastAssignment = NO_MODS;
+	private int[] preferredVersion = NO_MODS;
+	private Incompatibility[][] incompatibilities = new Incompatibility[0][];
+	private int[] incompatibilityCounts = NO_MODS;
+	private int[] domainSizes = NO_MODS;
+
+	// The undecided required mods, as a heap ordered by domain size and then id
+	private int[] undecided = NO_MODS;
+	private int[] undecidedIndex = NO_MODS;
+	private int undecidedCount = 0;
+
+	// Mods that have changed since they were last propagated
+	private int[] changed = NO_MODS;
+	private boolean[] isChanged = new boolean[0];
+	private int changedCount = 0;
+
+	// Assignment state, indexed by position in the partial solution
+	private int assignmentCount = 0;
+	private int[] assignmentMod = new int[16];
+	private int[] assignmentLevel = new int[16];
+	private int[] previousAssignment = new int[16];
+	private BitSet[] assignmentDomain = new BitSet[16];
+	private Incompatibility[] assignmentCause = new Incompatibility[16];
+
+	private int decisionLevel = 0;
+
+	ConflictDrivenSolver(ModCatalog catalog, Collection<ModDependency> externalRequirements) {
+		this.catalog = catalog;
+		this.externalRequirements = externalRequirements;
+	}
+
+	/**
+	 * Sets versions that should be chosen in place of the highest version of a mod, if they are still possible. This
+	 * must be called before solving.
+	 *
+	 * @return this solver
+	 */
+	ConflictDrivenSolver preferring(Map<String, ModInfo> versions) {
+		this.preferredVersions = versions;
+		return this;
+	}
+
+	/**
+	 * Sets a condition that stops the search, which is checked after each decision and each conflict.
+	 *
+	 * @return this solver
+	 */
+	ConflictDrivenSolver cancelWhen(BooleanSupplier cancelled) {
+		this.cancelled = cancelled;
+		return this;
+	}
+
+	/**
+	 * @throws CancellationException if the search was stopped by the condition set by {@link #cancelWhen}
+	 */
+	Map<String, ModInfo> solve() throws UnsolvableModGraphException {
+		Map<String, List<ModDependency>> groupedRequirements = new LinkedHashMap<>();
+
+		for (var requirement : externalRequirements) {
+			groupedRequirements.computeIfAbsent(requirement.modName(), unused -> new ArrayList<>()).add(requirement);
+		}
+
+		for (var entry : groupedRequirements.entrySet()) {
+			int mod = catalog.id(entry.getKey());
+			growMods();
+
+			var incompatibility = createIncompatibility(new int[] { mod }, new BitSet[] { without(mod, catalog.versionsMeeting(mod, entry.getValue())) });
+
+			if (incompatibility.mods.length == 0) {
+				// No version of the mod meets the requirement
+				throw new UnsolvableModGraphException();
+			}
+
+			addIncompatibility(incompatibility);
+		}
+
+		propagateAndResolve();
+
+		int next;
+		while ((next = nextMod()) != -1) {
+			checkCancelled();
+
+			int version = domains[next].nextSetBit(0);
+
+			if (preferredVersion[next] != -1 && domains[next].get(preferredVersion[next])) {
+				version = preferredVersion[next];
+			}
+
+			if (!dependenciesAdded[next].get(version)) {
+				addDependencies(next, version);
+			} else {
+				decide(next, version);
+			}
+
+			propagateAndResolve();
+		}
+
+		Map<String, ModInfo> result = new HashMap<>();
+
+		for (int mod = 0; mod < catalog.size(); mod++) {
+			if (isRequired(mod)) {
+				assert domains[mod].cardinality() == 1;
+
+				result.put(catalog.name(mod), catalog.info(mod, domains[mod].nextSetBit(0)));
+			}
+		}
+
+		return result;
+	}
+
+	private boolean isRequired(int mod) {
+		return !domains[mod].get(catalog.versionCount(mod));
+	}
+
+	/**
+	 * Returns the required mod with the fewest possible versions that has not been decided, or -1 if every required mod
+	 * has been decided.
+	 */
+	private int nextMod() {
+		return undecidedCount == 0 ? -1 : undecided[0];
+	}
+
+	private boolean isUndecided(int mod) {
+		return isRequired(mod) && (domainSizes[mod] != 1 || !dependenciesAdded[mod].get(domains[mod].nextSetBit(0)));
+	}
+
+	/**
+	 * Updates the domain size of a mod, and its place in the heap of undecided mods. This must be called whenever the
+	 * domain of the mod, or the versions that have had their dependencies added, change.
+	 */
+	private void updateUndecided(int mod) {
+		domainSizes[mod] = domains[mod].cardinality();
+
+		int index = undecidedIndex[mod];
+
+		if (!isUndecided(mod)) {
+			if (index != -1) {
+				int last = undecided[--undecidedCount];
+				undecidedIndex[mod] = -1;
+
+				if (last != mod) {
+					undecided[index] = last;
+					undecidedIndex[last] = index;
+					siftUndecided(index);
+				}
+			}
+
+			return;
+		}
+
+		if (index == -1) {
+			index = undecidedCount++;
+			undecided[index] = mod;
+			undecidedIndex[mod] = index;
+		}
+
+		siftUndecided(index);
+	}
+
+	/**
+	 * Moves the mod at an index of the heap up or down until it is in order
+	 */
+	private void siftUndecided(int index) {
+		int mod = undecided[index];
+
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+
+			if (!isBefore(mod, undecided[parent])) {
+				break;
+			}
+
+			undecided[index] = undecided[parent];
+			undecidedIndex[undecided[index]] = index;
+			index = parent;
+		}
+
+		while (true) {
+			int child = index * 2 + 1;
+
+			if (child >= undecidedCount) {
+				break;
+			}
+
+			if (child + 1 < undecidedCount && isBefore(undecided[child + 1], undecided[child])) {
+				child++;
+			}
+
+			if (!isBefore(undecided[child], mod)) {
+				break;
+			}
+
+			undecided[index] = undecided[child];
+			undecidedIndex[undecided[index]] = index;
+			index = child;
+		}
+
+		undecided[index] = mod;
+		undecidedIndex[mod] = index;
+	}
+
+	private boolean isBefore(int a, int b) {
+		return domainSizes[a] < domainSizes[b] || domainSizes[a] == domainSizes[b] && a < b;
+	}
+
+	/**
+	 * Adds an incompatibility for each mod that a version depends on, stating that the version cannot be installed
+	 * without a matching version of that mod.
+	 */
+	private void addDependencies(int mod, int version) {
+		dependenciesAdded[mod].set(version);
+		updateUndecided(mod);
+
+		var dependencyMods = catalog.dependencyMods(mod, version);
+		var dependencyVersions = catalog.dependencyVersions(mod, version);
+		growMods();
+
+		var versionSet = new BitSet();
+		versionSet.set(version);
+
+		for (int i = 0; i < dependencyMods.length; i++) {
+			int dependency = dependencyMods[i];
+
+			var incompatibility = createIncompatibility(
+					new int[] { mod, dependency },
+					new BitSet[] { versionSet, without(dependency, dependencyVersions[i]) });
+
+			if (incompatibility != null) {
+				addIncompatibility(incompatibility);
+			}
+		}
+	}
+
+	/**
+	 * Creates an incompatibility, merging terms for the same mod and removing terms that are always true. The arrays
+	 * may be modified.
+	 *
+	 * @return the incompatibility, or null if it can never be satisfied
+	 */
+	private Incompatibility createIncompatibility(int[] mods, BitSet[] values) {
+		int count = 0;
+
+		termLoop:
+		for (int i = 0; i < mods.length; i++) {
+			for (int j = 0; j < count; j++) {
+				if (mods[j] == mods[i]) {
+					values[j] = (BitSet) values[j].clone();
+					values[j].and(values[i]);
+					continue termLoop;
+				}
+			}
+
+			mods[count] = mods[i];
+			values[count] = values[i];
+			count++;
+		}
+
+		var resultMods = new int[count];
+		var resultValues = new BitSet[count];
+		var resultExcluded = new BitSet[count];
+		int size = 0;
+
+		for (int i = 0; i < count; i++) {
+			if (values[i].isEmpty()) {
+				return null;
+			}
+
+			var excluded = (BitSet) everything[mods[i]].clone();
+			excluded.andNot(values[i]);
+
+			if (!excluded.isEmpty()) {
+				resultMods[size] = mods[i];
+				resultValues[size] = values[i];
+				resultExcluded[size] = excluded;
+				size++;
+			}
+		}
+
+		return new Incompatibility(Arrays.copyOf(resultMods, size), Arrays.copyOf(resultValues, size), Arrays.copyOf(resultExcluded, size));
+	}
+
+	private void addIncompatibility(Incompatibility incompatibility) {
+		for (int mod : incompatibility.mods) {
+			var list = incompatibilities[mod];
+
+			if (incompatibilityCounts[mod] == list.length) {
+				list = incompatibilities[mod] = Arrays.copyOf(list, Math.max(4, list.length * 2));
+			}
+
+			list[incompatibilityCounts[mod]++] = incompatibility;
+			markChanged(mod);
+		}
+	}
+
+	private void decide(int mod, int version) {
+		decisionLevel++;
+
+		var domain = new BitSet();
+		domain.set(version);
+
+		assign(mod, domain, null);
+		markChanged(mod);
+	}
+
+	private void assign(int mod, BitSet domain, Incompatibility cause) {
+		if (assignmentCount == assignmentMod.length) {
+			int length = assignmentCount * 2;
+
+			assignmentMod = Arrays.copyOf(assignmentMod, length);
+			assignmentLevel = Arrays.copyOf(assignmentLevel, length);
+			previousAssignment = Arrays.copyOf(previousAssignment, length);
+			assignmentDomain = Arrays.copyOf(assignmentDomain, length);
+			assignmentCause = Arrays.copyOf(assignmentCause, length);
+		}
+
+		int index = assignmentCount++;
+
+		assignmentMod[index] = mod;
+		assignmentLevel[index] = decisionLevel;
+		previousAssignment[index] = lastAssignment[mod];
+		assignmentDomain[index] = domain;
+		assignmentCause[index] = cause;
+
+		lastAssignment[mod] = index;
+		domains[mod] = domain;
+		updateUndecided(mod);
+	}
+
+	private void checkCancelled() {
+		if (cancelled.getAsBoolean()) {
+			throw new CancellationException("The search was cancelled");
+		}
+	}
+
+	private void markChanged(int mod) {
+		if (!isChanged[mod]) {
+			isChanged[mod] = true;
+			changed[changedCount++] = mod;
+		}
+	}
+
+	/**
+	 * Propagates the changed mods, learning from and backtracking out of any conflicts found.
+	 *
+	 * @throws UnsolvableModGraphException if a conflict is found that does not depend on any decision
+	 */
+	private void propagateAndResolve() throws UnsolvableModGraphException {
+		Incompatibility conflict;
+
+		while ((conflict = propagate()) != null) {
+			checkCancelled();
+
+			while (changedCount > 0) {
+				isChanged[changed[--changedCount]] = false;
+			}
+
+			var learned = resolveConflict(conflict);
+
+			for (int mod : learned.mods) {
+				markChanged(mod);
+			}
+		}
+	}
+
+	/**
+	 * Derives new assignments from incompatibilities where all but one term is satisfied.
+	 *
+	 * @return an incompatibility that is satisfied by the current assignments, or null if there is none
+	 */
+	private Incompatibility propagate() {
+		while (changedCount > 0) {
+			int mod = changed[--changedCount];
+			isChanged[mod] = false;
+
+			var list = incompatibilities[mod];
+			int count = incompatibilityCounts[mod];
+
+			incompatibilityLoop:
+			for (int i = 0; i < count; i++) {
+				var incompatibility = list[i];
+				int unsatisfied = -1;
+
+				for (int term = 0; term < incompatibility.mods.length; term++) {
+					var domain = domains[incompatibility.mods[term]];
+
+					if (!domain.intersects(incompatibility.excluded[term])) {
+						// The term is satisfied
+						continue;
+					}
+
+					if (unsatisfied != -1 || !domain.intersects(incompatibility.values[term])) {
+						// This incompatibility cannot be used to derive anything
+						continue incompatibilityLoop;
+					}
+
+					unsatisfied = term;
+				}
+
+				if (unsatisfied == -1) {
+					return incompatibility;
+				}
+
+				int target = incompatibility.mods[unsatisfied];
+				var domain = (BitSet) domains[target].clone();
+				domain.and(incompatibility.excluded[unsatisfied]);
+
+				assign(target, domain, incompatibility);
+				markChanged(target);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Resolves an incompatibility that is satisfied by the current assignments into one that causes a new derivation,
+	 * and backtracks to the point where that derivation can be made.
+	 *
+	 * @return the learned incompatibility
+	 * @throws UnsolvableModGraphException if the conflict does not depend on any decision
+	 */
+	private Incompatibility resolveConflict(Incompatibility incompatibility) throws UnsolvableModGraphException {
+		boolean learned = false;
+
+		while (true) {
+			if (incompatibility.mods.length == 0) {
+				throw new UnsolvableModGraphException();
+			}
+
+			// The satisfier is the earliest assignment that, with those before it, satisfies every term
+			int satisfier = -1;
+			int previousSatisfierLevel = 0;
+
+			for (int term = 0; term < incompatibility.mods.length; term++) {
+				int termSatisfier = satisfier(incompatibility.mods[term], incompatibility.excluded[term]);
+
+				if (termSatisfier > satisfier) {
+					if (satisfier != -1) {
+						previousSatisfierLevel = Math.max(previousSatisfierLevel, assignmentLevel[satisfier]);
+					}
+
+					satisfier = termSatisfier;
+				} else {
+					previousSatisfierLevel = Math.max(previousSatisfierLevel, assignmentLevel[termSatisfier]);
+				}
+			}
+
+			var cause = assignmentCause[satisfier];
+
+			if (cause == null || previousSatisfierLevel != assignmentLevel[satisfier]) {
+				backtrack(previousSatisfierLevel);
+
+				if (learned) {
+					addIncompatibility(incompatibility);
+				}
+
+				return incompatibility;
+			}
+
+			incompatibility = resolve(incompatibility, cause, assignmentMod[satisfier]);
+			learned = true;
+		}
+	}
+
+	/**
+	 * Finds the first assignment after which the domain of the mod has none of the excluded values
+	 */
+	private int satisfier(int mod, BitSet excluded) {
+		int result = -1;
+
+		for (int assignment = lastAssignment[mod]; assignment != -1 && !assignmentDomain[assignment].intersects(excluded); assignment = previousAssignment[assignment]) {
+			result = assignment;
+		}
+
+		if (result == -1) {
+			throw new IllegalStateException("The term for " + catalog.name(mod) + " is not satisfied");
+		}
+
+		return result;
+	}
+
+	/**
+	 * Combines two incompatibilities that have a term for the same mod. As neither can be satisfied, the mod must have a
+	 * value outside of both terms whenever the other terms of both are satisfied.
+	 */
+	private Incompatibility resolve(Incompatibility a, Incompatibility b, int mod) {
+		int length = a.mods.length + b.mods.length - 1;
+		var mods = new int[length];
+		var values = new BitSet[length];
+		int size = 0;
+
+		for (var incompatibility : List.of(a, b)) {
+			for (int term = 0; term < incompatibility.mods.length; term++) {
+				if (incompatibility.mods[term] != mod) {
+					mods[size] = incompatibility.mods[term];
+					values[size] = incompatibility.values[term];
+					size++;
+				}
+			}
+		}
+
+		var union = (BitSet) a.values[a.termFor(mod)].clone();
+		union.or(b.values[b.termFor(mod)]);
+
+		mods[size] = mod;
+		values[size] = union;
+
+		// Satisfied terms always overlap, so this cannot be null
+		return createIncompatibility(mods, values);
+	}
+
+	private void backtrack(int level) {
+		while (assignmentCount > 0 && assignmentLevel[assignmentCount - 1] > level) {
+			int index = --assignmentCount;
+			int mod = assignmentMod[index];
+			int previous = previousAssignment[index];
+
+			lastAssignment[mod] = previous;
+			domains[mod] = previous == -1 ? everything[mod] : assignmentDomain[previous];
+			updateUndecided(mod);
+
+			assignmentDomain[index] = null;
+			assignmentCause[index] = null;
+		}
+
+		decisionLevel = level;
+	}
+
+	/**
+	 * Extends the mod state to cover every mod in the catalog
+	 */
+	private void growMods() {
+		int oldSize = domains.length;
+		int size = catalog.size();
+
+		if (size == oldSize) {
+			return;
+		}
+
+		everything = Arrays.copyOf(everything, size);
+		domains = Arrays.copyOf(domains, size);
+		dependenciesAdded = Arrays.copyOf(dependenciesAdded, size);
+		lastAssignment = Arrays.copyOf(lastAssignment, size);
+		preferredVersion = Arrays.copyOf(preferredVersion, size);
+		incompatibilities = Arrays.copyOf(incompatibilities, size);
+		incompatibilityCounts = Arrays.copyOf(incompatibilityCounts, size);
+		domainSizes = Arrays.copyOf(domainSizes, size);
+		undecided = Arrays.copyOf(undecided, size);
+		undecidedIndex = Arrays.copyOf(undecidedIndex, size);
+		changed = Arrays.copyOf(changed, size);
+		isChanged = Arrays.copyOf(isChanged, size);
+
+		for (int mod = oldSize; mod < size; mod++) {
+			int values = catalog.versionCount(mod) + 1;
+
+			everything[mod] = new BitSet(values);
+			everything[mod].set(0, values);
+			domains[mod] = everything[mod];
+			dependenciesAdded[mod] = new BitSet();
+			lastAssignment[mod] = -1;
+
+			var preferred = preferredVersions.get(catalog.name(mod));
+			preferredVersion[mod] = preferred == null ? -1 : catalog.indexOf(mod, preferred);
+			incompatibilities[mod] = new Incompatibility[0];
+
+			// A new mod is not required, as it may not be installed
+			domainSizes[mod] = values;
+			undecidedIndex[mod] = -1;
+		}
+	}
+
+	/** Returns every value of the mod that is not in the set, including the mod not being installed */
+	private BitSet without(int mod, BitSet values) {
+		var result = (BitSet) everything[mod].clone();
+		result.andNot(values);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return catalog.toString();
+	}
+}
@@ -6,6 +6,7 @@ import brownshome.modding.modsource.ModSource;
 import brownshome.modding.ModVersion;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -19,6 +20,9 @@ final class DependencyNode {
 	// Shared among all nodes
 	private final Function<String, DependencyNode> nodeSource;
 
+	/** Called when this node may need a version to be chosen */
+	private final Consumer<DependencyNode> worklist;
+
 	// Local constants
 	private final String name;
 
@@ -29,22 +33,26 @@ final class DependencyNode {
 	private final class IncomingDep {
 		/** Null if the source is external */
 		final DependencyNode source;
-		final SortedSet<ModInfo> versions;
+
+		/** The allowed versions, indexed by position in modInfos */
+		final BitSet versions;
 
 		IncomingDep(DependencyNode source, Collection<ModDependency> deps) {
 			this.source = source;
 
-			versions = new TreeSet<>(ModInfo.VERSION_COMPARATOR.reversed());
+			versions = new BitSet(modInfos.size());
 
 			infoLoop:
-			for (var info : modInfos) {
+			for (int i = 0; i < modInfos.size(); i++) {
+				var version = modInfos.get(i).version();
+
 				for (var dep : deps) {
-					if (!dep.isMetBy(info.version())) {
+					if (!dep.isMetBy(version)) {
 						continue infoLoop;
 					}
 				}
 
-				versions.add(info);
+				versions.set(i);
 			}
 		}
 
@@ -53,7 +61,8 @@ final class DependencyNode {
 		}
 	}
 
-	private final Map<DependencyNode, IncomingDep> incomingDeps = new HashMap<>();
+	/** Kept in the order that the dependencies were added, so that the search does not depend on identity hash codes */
+	private final Map<DependencyNode, IncomingDep> incomingDeps = new LinkedHashMap<>();
 
 	/**
 	 * The current chosen version. If this is null it indicates that we have not chosen a chosenVersion.
@@ -66,8 +75,12 @@ final class DependencyNode {
 	 **/
 	private int searchFrom;
 
-	DependencyNode(String name, ModSource modSource, Function<String, DependencyNode> nodeSource) {
+	/** Reused to intersect the incoming versions when choosing a version */
+	private final BitSet candidates = new BitSet();
+
+	DependencyNode(String name, ModSource modSource, Function<String, DependencyNode> nodeSource, Consumer<DependencyNode> worklist) {
 		this.nodeSource = nodeSource;
+		this.worklist = worklist;
 		this.name = name;
 
 		modInfos = new ArrayList<>(modSource.availableMods(name));
@@ -111,25 +124,24 @@ final class DependencyNode {
 			outgoingNodesAtLastSet = chosenVersion.dependencies().stream()
 					.map(ModDependency::modName)
 					.map(nodeSource)
-					.collect(Collectors.toSet());
+					.collect(Collectors.toCollection(LinkedHashSet::new));
 		}
 
 		do {
 			ModInfo newChosenVersion = null;
 
-			versionSearch:
-			for (int i = searchFrom; i < modInfos.size(); i++) {
-				var modInfo = modInfos.get(i);
+			candidates.clear();
+			candidates.set(searchFrom, modInfos.size());
 
-				for(var dep : incomingDeps.values()) {
-					if(!dep.versions.contains(modInfo)) {
-						continue versionSearch;
-					}
-				}
+			for (var dep : incomingDeps.values()) {
+				candidates.and(dep.versions);
+			}
+
+			int index = candidates.nextSetBit(searchFrom);
 
-				searchFrom = i + 1;
-				newChosenVersion = modInfo;
-				break;
+			if (index != -1) {
+				searchFrom = index + 1;
+				newChosenVersion = modInfos.get(index);
 			}
 
 			if(newChosenVersion != null) {
@@ -139,6 +151,12 @@ final class DependencyNode {
 
 			clearVersionChoice();
 
+			if (!isRequired()) {
+				// Nothing needs this mod any more, so dropping its version has removed the requirements it placed on
+				// other mods, which is all that relaxing it can do
+				return;
+			}
+
 			// If there is no such version relax the highest incoming constraint until there is a version, or failure
 			// Each dep has a lower and upper mod it will accept, additionally deps may reject mods in-between these ranges
 			// The dep with the highest lower bound is the one that is relaxed.
@@ -165,7 +183,7 @@ final class DependencyNode {
 		chosenVersion = newChosenVersion;
 
 		var outgoingLists = chosenVersion.dependencies().stream()
-				.collect(Collectors.groupingBy(dep -> nodeSource.apply(dep.modName())));
+				.collect(Collectors.groupingBy(dep -> nodeSource.apply(dep.modName()), LinkedHashMap::new, Collectors.toList()));
 
 		// Remove all deps that are not going to be re-added
 		for (var node : oldOutgoingNodes) {
@@ -207,7 +225,7 @@ final class DependencyNode {
 				return dep.source;
 			}
 
-			var lowerBound = dep.versions.first().version();
+			var lowerBound = modInfos.get(dep.versions.nextSetBit(0)).version();
 
 			if(highestLowerBound == null || lowerBound.compareTo(highestLowerBound) > 0) {
 				highestLowerBound = lowerBound;
@@ -237,6 +255,7 @@ final class DependencyNode {
 	/** This removes the old dependencies from this node and adds the new ones */
 	private void setIncomingDependency(DependencyNode node, Collection<ModDependency> dependencies) {
 		incomingDeps.put(node, new IncomingDep(node, dependencies));
+		worklist.accept(this);
 
 		// If the new dep is not met by the current version step then invalidate the chosen version
 		if (chosenVersion != null && dependencies.stream().anyMatch(dep -> !dep.isMetBy(chosenVersion.version()))) {
@@ -270,6 +289,7 @@ final class DependencyNode {
 		}
 
 		chosenVersion = null;
+		worklist.accept(this);
 	}
 
 	/**
@@ -0,0 +1,169 @@
+package brownshome.modding.dependencygraph;
+
+import brownshome.modding.ModDependency;
+import brownshome.modding.ModInfo;
+import brownshome.modding.ModLoadingException;
+
+import java.util.*;
+
+/**
+ * Selects mod versions using minimal version selection, in the style of Go modules.
+ * <br>
+ * Each requirement is met by the lowest version of the mod that meets it. Every version reached in this way has its own
+ * requirements met in the same way, and the highest version of each mod that is reached is selected. Each version is
+ * visited at most once, so the search never backtracks and takes polynomial time. The same catalog and requirements
+ * always give the same selection, even when newer versions are added.
+ * <br>
+ * This is only sound when every requirement sets a lowest version, as a newer version must meet each requirement that
+ * an older one does. A requirement with an upper limit, such as {@link brownshome.modding.util.DependencyRules#EXACTLY
+ * EXACTLY} or {@link brownshome.modding.util.DependencyRules#OLDER OLDER}, causes an error. The upper limit of a
+ * {@link brownshome.modding.util.DependencyRules#COMPATIBLE COMPATIBLE} requirement is checked after the versions are
+ * selected, and causes an error if it is not met.
+ */
+final class MinimalVersionSolver {
+	private final ModCatalog catalog;
+	private final Collection<ModDependency> externalRequirements;
+
+	/** The versions of each mod that have been reached */
+	private final List<BitSet> reached = new ArrayList<>();
+
+	/** Versions that have been reached but whose requirements have not been followed, as pairs of mod and version */
+	private final Deque<int[]> unvisited = new ArrayDeque<>();
+
+	MinimalVersionSolver(ModCatalog catalog, Collection<ModDependency> externalRequirements) {
+		this.catalog = catalog;
+		this.externalRequirements = externalRequirements;
+	}
+
+	Map<String, ModInfo> solve() throws ModLoadingException {
+		checkLowerBounds(externalRequirements, "the root requirements");
+
+		var rootMods = rootMods();
+		var rootVersions = rootVersions(rootMods);
+
+		for (int i = 0; i < rootMods.length; i++) {
+			reachLowest(rootMods[i], rootVersions[i], externalRequirements);
+		}
+
+		int[] next;
+		while ((next = unvisited.poll()) != null) {
+			int mod = next[0], version = next[1];
+			var info = catalog.info(mod, version);
+
+			checkLowerBounds(info.dependencies(), info.toString());
+
+			var dependencyMods = catalog.dependencyMods(mod, version);
+			var dependencyVersions = catalog.dependencyVersions(mod, version);
+
+			for (int i = 0; i < dependencyMods.length; i++) {
+				reachLowest(dependencyMods[i], dependencyVersions[i], info.dependencies());
+			}
+		}
+
+		return selection(rootMods, rootVersions);
+	}
+
+	private int[] rootMods() {
+		var names = new LinkedHashSet<String>();
+
+		for (var requirement : externalRequirements) {
+			names.add(requirement.modName());
+		}
+
+		var result = new int[names.size()];
+		int i = 0;
+
+		for (var name : names) {
+			result[i++] = catalog.id(name);
+		}
+
+		return result;
+	}
+
+	private BitSet[] rootVersions(int[] rootMods) {
+		var result = new BitSet[rootMods.length];
+
+		for (int i = 0; i < rootMods.length; i++) {
+			var name = catalog.name(rootMods[i]);
+			var requirements = new ArrayList<ModDependency>();
+
+			for (var requirement : externalRequirements) {
+				if (requirement.modName().equals(name)) {
+					requirements.add(requirement);
+				}
+			}
+
+			result[i] = catalog.versionsMeeting(rootMods[i], requirements);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reaches the lowest of a set of versions of a mod
+	 */
+	private void reachLowest(int mod, BitSet versions, Collection<ModDependency> requirements) throws ModLoadingException {
+		if (versions.isEmpty()) {
+			throw new ModLoadingException(String.format("No version of %s meets the requirements %s. Available mods: %s.", catalog.name(mod), requirements, catalog));
+		}
+
+		while (reached.size() <= mod) {
+			reached.add(new BitSet());
+		}
+
+		// Versions are stored highest first, so the lowest version has the highest index
+		int lowest = versions.length() - 1;
+
+		if (!reached.get(mod).get(lowest)) {
+			reached.get(mod).set(lowest);
+			unvisited.add(new int[] { mod, lowest });
+		}
+	}
+
+	private static void checkLowerBounds(Collection<ModDependency> requirements, String owner) throws ModLoadingException {
+		for (var requirement : requirements) {
+			if (!requirement.isLowerBound()) {
+				throw new ModLoadingException(String.format("Minimal version selection cannot be used, as the requirement %s of %s is not a lower bound", requirement, owner));
+			}
+		}
+	}
+
+	/**
+	 * Selects the highest reached version of each mod that is required by the roots, checking that it meets every
+	 * requirement on it.
+	 */
+	private Map<String, ModInfo> selection(int[] rootMods, BitSet[] rootVersions) throws ModLoadingException {
+		Map<String, ModInfo> result = new HashMap<>();
+		Deque<Integer> unchecked = new ArrayDeque<>();
+
+		for (int i = 0; i < rootMods.length; i++) {
+			select(rootMods[i], rootVersions[i], externalRequirements, result, unchecked);
+		}
+
+		Integer mod;
+		while ((mod = unchecked.poll()) != null) {
+			int version = reached.get(mod).nextSetBit(0);
+			var dependencyMods = catalog.dependencyMods(mod, version);
+			var dependencyVersions = catalog.dependencyVersions(mod, version);
+
+			for (int i = 0; i < dependencyMods.length; i++) {
+				select(dependencyMods[i], dependencyVersions[i], catalog.info(mod, version).dependencies(), result, unchecked);
+			}
+		}
+
+		return result;
+	}
+
+	private void select(int mod, BitSet accepted, Collection<ModDependency> requirements, Map<String, ModInfo> result, Deque<Integer> unchecked) throws ModLoadingException {
+		int version = reached.get(mod).nextSetBit(0);
+		var info = catalog.info(mod, version);
+
+		if (!accepted.get(version)) {
+			throw new ModLoadingException(String.format("Minimal version selection chose %s, which does not meet the requirements %s", info, requirements));
+		}
+
+		if (result.put(info.name(), info) == null) {
+			unchecked.add(mod);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package brownshome.modding.dependencygraph;
+
+import brownshome.modding.ModDependency;
+import brownshome.modding.ModInfo;
+import brownshome.modding.modsource.ModSource;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The available versions of each mod, and their dependencies, in a form that can be searched without hashing.
+ * <br>
+ * Each mod name is interned to an int the first time that it is seen, and its versions are stored highest first. The
+ * dependencies of a version are compiled, when first used, into an array of the ids of the mods that it depends on and
+ * the set of versions of each of those mods that it accepts.
+ * <br>
+ * A catalog belongs to a single search. The versions of each mod, and the accepted versions of each dependency, are
+ * held in {@link ModVersions} objects, which can be shared between the catalogs of many searches.
+ */
+final class ModCatalog {
+	private final Function<String, ModVersions> modVersions;
+
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<ModVersions> versions = new ArrayList<>();
+
+	/** The mods that each version depends on, by mod and version. Null until the version is first used */
+	private final List<int[][]> dependencyMods = new ArrayList<>();
+
+	ModCatalog(ModSource modSource) {
+		this(ModVersions.cache(modSource::availableMods));
+	}
+
+	/**
+	 * Creates a catalog that reads the versions of each mod from a function, which must always return the same object
+	 * for a name
+	 */
+	ModCatalog(Function<String, ModVersions> modVersions) {
+		this.modVersions = modVersions;
+	}
+
+	/**
+	 * Returns the id of a mod, reading its versions from the mod source if it has not been seen before.
+	 */
+	int id(String name) {
+		var id = ids.get(name);
+
+		if (id != null) {
+			return id;
+		}
+
+		var mod = modVersions.apply(name);
+		int newId = versions.size();
+
+		ids.put(name, newId);
+		versions.add(mod);
+		dependencyMods.add(new int[mod.size()][]);
+
+		return newId;
+	}
+
+	/** The number of mods that have been interned */
+	int size() {
+		return versions.size();
+	}
+
+	String name(int mod) {
+		return versions.get(mod).name();
+	}
+
+	int versionCount(int mod) {
+		return versions.get(mod).size();
+	}
+
+	ModInfo info(int mod, int version) {
+		return versions.get(mod).info(version);
+	}
+
+	/**
+	 * Returns the index of a version of a mod, or -1 if it is not available
+	 */
+	int indexOf(int mod, ModInfo info) {
+		var mods = versions.get(mod);
+
+		for (int i = 0; i < mods.size(); i++) {
+			if (mods.info(i).equals(info)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the ids of the mods that a version depends on, each mod appearing once
+	 */
+	int[] dependencyMods(int mod, int version) {
+		var result = dependencyMods.get(mod)[version];
+
+		if (result == null) {
+			var names = versions.get(mod).dependencyNames(version, modVersions);
+			result = new int[names.length];
+
+			for (int i = 0; i < names.length; i++) {
+				result[i] = id(names[i]);
+			}
+
+			dependencyMods.get(mod)[version] = result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the versions accepted by each dependency returned by {@link #dependencyMods(int, int)}. These sets must not
+	 * be modified.
+	 */
+	BitSet[] dependencyVersions(int mod, int version) {
+		return versions.get(mod).dependencyVersions(version, modVersions);
+	}
+
+	/**
+	 * Returns the versions of a mod that meet all of the dependencies.
+	 *
+	 * @see ModVersions#versionsMeeting(Collection)
+	 */
+	BitSet versionsMeeting(int mod, Collection<ModDependency> dependencies) {
+		return versions.get(mod).versionsMeeting(dependencies);
+	}
+
+	@Override
+	public String toString() {
+		var builder = new StringJoiner(", ", "{", "}");
+
+		for (var mod : versions) {
+			builder.add(mod.name() + "=" + mod);
+		}
+
+		return builder.toString();
+	}
+}
@@ -0,0 +1,100 @@
+package brownshome.modding.dependencygraph;
+
+import brownshome.modding.ModDependency;
+import brownshome.modding.ModInfo;
+
+import java.util.*;
+
+/**
+ * A change to the available mods and root requirements since a selection was made.
+ *
+ * @see VersionSelector#reselect(Map, ModDelta)
+ */
+public final class ModDelta {
+	private final Map<String, Set<ModInfo>> addedMods = new HashMap<>();
+	private final Set<ModInfo> removedMods = new HashSet<>();
+	private final List<ModDependency> addedRequirements = new ArrayList<>();
+	private final List<ModDependency> removedRequirements = new ArrayList<>();
+
+	/**
+	 * Creates a delta with no changes
+	 */
+	public ModDelta() { }
+
+	/**
+	 * Makes a mod available
+	 *
+	 * @return this delta
+	 */
+	public ModDelta addMod(ModInfo info) {
+		removedMods.remove(info);
+		addedMods.computeIfAbsent(info.name(), unused -> new LinkedHashSet<>()).add(info);
+		return this;
+	}
+
+	/**
+	 * Makes a mod unavailable
+	 *
+	 * @return this delta
+	 */
+	public ModDelta removeMod(ModInfo info) {
+		var added = addedMods.get(info.name());
+
+		if (added != null) {
+			added.remove(info);
+		}
+
+		removedMods.add(info);
+		return this;
+	}
+
+	/**
+	 * Adds a root requirement
+	 *
+	 * @return this delta
+	 */
+	public ModDelta addRequirement(ModDependency requirement) {
+		addedRequirements.add(requirement);
+		return this;
+	}
+
+	/**
+	 * Removes a root requirement. The requirement is matched using equals.
+	 *
+	 * @return this delta
+	 */
+	public ModDelta removeRequirement(ModDependency requirement) {
+		removedRequirements.add(requirement);
+		return this;
+	}
+
+	boolean isRemoved(ModInfo info) {
+		return removedMods.contains(info);
+	}
+
+	/**
+	 * Returns the available versions of a mod after this change
+	 */
+	Collection<ModInfo> availableMods(String name, Collection<ModInfo> previous) {
+		var added = addedMods.getOrDefault(name, Collections.emptySet());
+
+		if (added.isEmpty() && removedMods.isEmpty()) {
+			return previous;
+		}
+
+		var result = new LinkedHashSet<ModInfo>(previous);
+		result.addAll(added);
+		result.removeAll(removedMods);
+		return result;
+	}
+
+	/**
+	 * Returns the root requirements after this change
+	 */
+	List<ModDependency> requirements(Collection<ModDependency> previous) {
+		var result = new ArrayList<>(previous);
+		result.removeAll(removedRequirements);
+		result.addAll(addedRequirements);
+		return result;
+	}
+}
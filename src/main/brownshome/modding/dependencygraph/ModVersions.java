@@ -0,0 +1,178 @@
+package brownshome.modding.dependencygraph;
+
+import brownshome.modding.ModDependency;
+import brownshome.modding.ModInfo;
+import brownshome.modding.ModVersion;
+import brownshome.modding.util.SemanticModVersion;
+import brownshome.modding.util.VersionRange;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The available versions of one mod, highest first, and their compiled dependencies. This holds no state of a search,
+ * and may be shared between catalogs on different threads.
+ * <br>
+ * The dependencies of a version are compiled, when first used, into the names of the mods that it depends on and the
+ * set of versions of each of those mods that it accepts.
+ */
+final class ModVersions {
+	private static final String[] NO_NAMES = new String[0];
+
+	private final String name;
+	private final ModInfo[] infos;
+
+	/** The version numbers, highest first, or null if any of them is not a semantic version */
+	private final List<ModVersion> semanticVersions;
+
+	/** The mods that each version depends on. Null until the version is compiled */
+	private final String[][] dependencyNames;
+
+	/** The accepted versions of each mod in dependencyNames */
+	private final BitSet[][] dependencyVersions;
+
+	ModVersions(String name, Collection<ModInfo> available) {
+		this.name = name;
+		this.infos = available.toArray(new ModInfo[0]);
+		Arrays.sort(infos, ModInfo.VERSION_COMPARATOR.reversed());
+
+		this.semanticVersions = semanticVersions(infos);
+		this.dependencyNames = new String[infos.length][];
+		this.dependencyVersions = new BitSet[infos.length][];
+	}
+
+	/**
+	 * Returns a function that reads the versions of each mod once, and returns the same object each time that it is
+	 * called with the same name. The function is not thread-safe.
+	 */
+	static Function<String, ModVersions> cache(Function<String, Collection<ModInfo>> availableMods) {
+		Map<String, ModVersions> cache = new HashMap<>();
+		return name -> cache.computeIfAbsent(name, key -> new ModVersions(key, availableMods.apply(key)));
+	}
+
+	String name() {
+		return name;
+	}
+
+	int size() {
+		return infos.length;
+	}
+
+	ModInfo info(int version) {
+		return infos[version];
+	}
+
+	/**
+	 * Returns the names of the mods that a version depends on, each mod appearing once
+	 *
+	 * @param versions looks up the versions of the mods that are depended on
+	 */
+	synchronized String[] dependencyNames(int version, Function<String, ModVersions> versions) {
+		compile(version, versions);
+		return dependencyNames[version];
+	}
+
+	/**
+	 * Returns the versions accepted by each dependency returned by {@link #dependencyNames}. These sets must not be
+	 * modified.
+	 */
+	synchronized BitSet[] dependencyVersions(int version, Function<String, ModVersions> versions) {
+		compile(version, versions);
+		return dependencyVersions[version];
+	}
+
+	private static List<ModVersion> semanticVersions(ModInfo[] infos) {
+		var result = new ArrayList<ModVersion>(infos.length);
+
+		for (var info : infos) {
+			if (!(info.version() instanceof SemanticModVersion)) {
+				return null;
+			}
+
+			result.add(info.version());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the versions that meet all of the dependencies. If every dependency can be expressed as a range, the
+	 * ranges are intersected and the matching versions found by binary search, otherwise each version is tested against
+	 * each dependency.
+	 */
+	BitSet versionsMeeting(Collection<ModDependency> dependencies) {
+		var range = combinedRange(dependencies);
+
+		if (range != null) {
+			return range.matching(semanticVersions);
+		}
+
+		var result = new BitSet(infos.length);
+
+		versionLoop:
+		for (int i = 0; i < infos.length; i++) {
+			for (var dependency : dependencies) {
+				if (!dependency.isMetBy(infos[i].version())) {
+					continue versionLoop;
+				}
+			}
+
+			result.set(i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the intersection of the ranges of the dependencies, or null if a range cannot be used
+	 */
+	private VersionRange combinedRange(Collection<ModDependency> dependencies) {
+		if (semanticVersions == null) {
+			return null;
+		}
+
+		var result = VersionRange.ANY;
+
+		for (var dependency : dependencies) {
+			var range = dependency.range();
+
+			if (range == null) {
+				return null;
+			}
+
+			result = result.intersect(range);
+		}
+
+		return result;
+	}
+
+	private void compile(int version, Function<String, ModVersions> versions) {
+		if (dependencyNames[version] != null) {
+			return;
+		}
+
+		Map<String, List<ModDependency>> grouped = new LinkedHashMap<>();
+
+		for (var dependency : infos[version].dependencies()) {
+			grouped.computeIfAbsent(dependency.modName(), unused -> new ArrayList<>()).add(dependency);
+		}
+
+		var names = grouped.isEmpty() ? NO_NAMES : new String[grouped.size()];
+		var accepted = new BitSet[grouped.size()];
+		int i = 0;
+
+		for (var entry : grouped.entrySet()) {
+			names[i] = entry.getKey();
+			accepted[i] = versions.apply(entry.getKey()).versionsMeeting(entry.getValue());
+			i++;
+		}
+
+		dependencyVersions[version] = accepted;
+		dependencyNames[version] = names;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(infos);
+	}
+}
@@ -0,0 +1,90 @@
+package brownshome.modding.dependencygraph;
+
+import brownshome.modding.ModDependency;
+import brownshome.modding.ModInfo;
+import brownshome.modding.ModLoadingException;
+import brownshome.modding.modsource.ModSource;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the backtracking search on an executor while the conflict-driven search runs on the calling thread, and uses the
+ * answer of the conflict-driven search whenever it gives one.
+ * <br>
+ * The conflict-driven search is complete, so its selection, or its proof that there is no selection, is returned as
+ * soon as it finishes and the backtracking search is cancelled. The backtracking search is not complete, so its answer
+ * is only used if the conflict-driven search fails with an unexpected exception. The result therefore never depends on
+ * which search finishes first. The time taken is that of the conflict-driven search, or if it fails, the longer of the
+ * two searches.
+ */
+final class PortfolioSolver {
+	private final ModSource modSource;
+	private final Collection<ModDependency> externalRequirements;
+	private final Executor executor;
+
+	PortfolioSolver(ModSource modSource, Collection<ModDependency> externalRequirements, Executor executor) {
+		this.modSource = modSource;
+		this.externalRequirements = externalRequirements;
+		this.executor = executor;
+	}
+
+	Map<String, ModInfo> solve() throws ModLoadingException {
+		var finished = new AtomicBoolean(false);
+		var backtracking = new FutureTask<>(() -> new VersionSelector(modSource, externalRequirements)
+				.strategy(SelectionStrategy.BACKTRACKING)
+				.cancelWhen(finished::get)
+				.selectModVersions());
+
+		executor.execute(backtracking);
+
+		try {
+			return new VersionSelector(modSource, externalRequirements)
+					.strategy(SelectionStrategy.CONFLICT_DRIVEN)
+					.selectModVersions();
+		} catch (RuntimeException | Error e) {
+			return fallback(backtracking, e);
+		} finally {
+			// Stops the backtracking search, or keeps it from starting, once there is an answer
+			finished.set(true);
+			backtracking.cancel(false);
+		}
+	}
+
+	/**
+	 * Returns the answer of the backtracking search after the conflict-driven search has failed with an unexpected
+	 * exception. If the executor has not started the backtracking search yet it is run on this thread.
+	 */
+	private static Map<String, ModInfo> fallback(FutureTask<Map<String, ModInfo>> backtracking, Throwable failure) throws ModLoadingException {
+		backtracking.run();
+
+		try {
+			return backtracking.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			failure.addSuppressed(ie);
+		} catch (CancellationException ce) {
+			failure.addSuppressed(ce);
+		} catch (ExecutionException ee) {
+			var cause = ee.getCause();
+
+			if (cause instanceof ModLoadingException) {
+				cause.addSuppressed(failure);
+				throw (ModLoadingException) cause;
+			}
+
+			failure.addSuppressed(cause);
+		}
+
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+
+		throw (RuntimeException) failure;
+	}
+}
@@ -0,0 +1,42 @@
+package brownshome.modding.dependencygraph;
+
+/**
+ * The search used by a {@link VersionSelector} to find a set of mod versions that meet every requirement. Every strategy
+ * except {@link #MINIMAL} prefers the highest available version of each mod.
+ */
+public enum SelectionStrategy {
+	/**
+	 * Chooses the highest version of each mod, and on a conflict lowers the version of the mod with the most stringent
+	 * requirement one step at a time. This is fast when there are few conflicts, but learns nothing from a dead end.
+	 * <br>
+	 * Unlike the other searches, this search looks mods up by name in a map of nodes rather than by an interned id, and
+	 * allocates as it goes. Use {@link #CONFLICT_DRIVEN} for catalogs of thousands of mods.
+	 */
+	BACKTRACKING,
+
+	/**
+	 * Searches in the style of PubGrub. Each conflict is analysed to learn an incompatibility that rules out the cause of
+	 * the conflict, and the search jumps back to the choice that caused it. This avoids exploring the same dead end
+	 * twice, and should be used for large catalogs with many versions of each mod.
+	 */
+	CONFLICT_DRIVEN,
+
+	/**
+	 * Runs the {@link #CONFLICT_DRIVEN} search on the calling thread while the {@link #BACKTRACKING} search runs on the
+	 * common fork-join pool. The conflict-driven search is complete, so its answer is used as soon as it finishes, and the
+	 * backtracking search is then stopped. The result is therefore always that of {@link #CONFLICT_DRIVEN}, and takes as
+	 * long to find. The backtracking selection is only used if the conflict-driven search fails with an unexpected
+	 * exception, in which case the time taken is at most the longer of the two searches. The mod source must be safe to
+	 * query from several threads at once.
+	 */
+	PORTFOLIO,
+
+	/**
+	 * Chooses the lowest version of each mod that meets every requirement, in the style of Go modules. The selection only
+	 * changes when the requirements do, not when newer versions become available, and is found without backtracking.
+	 * Every requirement must set a lowest version, using {@link brownshome.modding.util.DependencyRules#NEWER NEWER},
+	 * {@link brownshome.modding.util.DependencyRules#NEWER_OR_EQUAL NEWER_OR_EQUAL} or
+	 * {@link brownshome.modding.util.DependencyRules#COMPATIBLE COMPATIBLE}, or selection fails.
+	 */
+	MINIMAL
+}
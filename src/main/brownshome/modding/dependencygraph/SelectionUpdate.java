@@ -0,0 +1,54 @@
+package brownshome.modding.dependencygraph;
+
+import brownshome.modding.ModInfo;
+
+import java.util.*;
+
+/**
+ * The result of re-selecting mod versions after a change, along with the mods that the change affected.
+ *
+ * @see VersionSelector#reselect(Map, ModDelta)
+ */
+public final class SelectionUpdate {
+	private final Map<String, ModInfo> selection;
+	private final Set<String> changedMods;
+
+	SelectionUpdate(Map<String, ModInfo> previousSelection, Map<String, ModInfo> selection) {
+		this.selection = Collections.unmodifiableMap(selection);
+
+		var changed = new TreeSet<String>();
+
+		for (var entry : selection.entrySet()) {
+			if (!entry.getValue().equals(previousSelection.get(entry.getKey()))) {
+				changed.add(entry.getKey());
+			}
+		}
+
+		for (var name : previousSelection.keySet()) {
+			if (!selection.containsKey(name)) {
+				changed.add(name);
+			}
+		}
+
+		this.changedMods = Collections.unmodifiableSet(changed);
+	}
+
+	/**
+	 * The selected version of each required mod
+	 */
+	public Map<String, ModInfo> selection() {
+		return selection;
+	}
+
+	/**
+	 * The names of the mods that were added to the selection, removed from it, or changed version
+	 */
+	public Set<String> changedMods() {
+		return changedMods;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s changed %s", selection.values(), changedMods);
+	}
+}
@@ -5,9 +5,22 @@ import brownshome.modding.ModDependency;
 import brownshome.modding.ModLoadingException;
 import brownshome.modding.modsource.ModSource;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -16,26 +29,78 @@ import java.util.stream.Collectors;
  */
 public final class VersionSelector {
 	private final Map<String, DependencyNode> nodeCache = new HashMap<>();
+
+	/** Nodes that may need a version to be chosen, in the order that they were added */
+	private final Set<DependencyNode> worklist = new LinkedHashSet<>();
 	private final ModSource modSource;
 	private final Collection<ModDependency> externalRequirements;
 
+	private SelectionStrategy strategy = SelectionStrategy.BACKTRACKING;
+	private BooleanSupplier cancelled = () -> false;
+
+	/** Whether the external requirements have been added to the nodes used by the backtracking search */
+	private boolean requirementsAdded = false;
+
 	public VersionSelector(ModSource modSource, Collection<ModDependency> externalRequirements) {
 		this.modSource = modSource;
+		this.externalRequirements = externalRequirements;
+	}
 
-		var groupedRequirements = externalRequirements.stream()
-				.collect(Collectors.groupingBy(dep -> getNode(dep.modName())));
+	/**
+	 * Sets the search used to select the versions. By default {@link SelectionStrategy#BACKTRACKING} is used.
+	 *
+	 * @param strategy the search to use
+	 * @return this selector
+	 */
+	public VersionSelector strategy(SelectionStrategy strategy) {
+		this.strategy = Objects.requireNonNull(strategy);
+		return this;
+	}
 
-		for (var entry : groupedRequirements.entrySet()) {
-			var node = entry.getKey();
-			var depList = entry.getValue();
+	/**
+	 * Sets a condition that stops the search, which is checked between the choices made by the search. When it is met,
+	 * {@link #selectModVersions()} throws a {@link java.util.concurrent.CancellationException}.
+	 *
+	 * @return this selector
+	 */
+	VersionSelector cancelWhen(BooleanSupplier cancelled) {
+		this.cancelled = Objects.requireNonNull(cancelled);
+		return this;
+	}
 
-			node.setExternalDependency(depList);
+	public Map<String, ModInfo> selectModVersions() throws ModLoadingException {
+		if (strategy == SelectionStrategy.PORTFOLIO) {
+			return new PortfolioSolver(modSource, externalRequirements, ForkJoinPool.commonPool()).solve();
 		}
 
-		this.externalRequirements = externalRequirements;
-	}
+		if (strategy == SelectionStrategy.MINIMAL) {
+			return new MinimalVersionSolver(new ModCatalog(modSource), externalRequirements).solve();
+		}
+
+		if (strategy == SelectionStrategy.CONFLICT_DRIVEN) {
+			var solver = new ConflictDrivenSolver(new ModCatalog(modSource), externalRequirements).cancelWhen(cancelled);
+
+			try {
+				return solver.solve();
+			} catch (UnsolvableModGraphException udge) {
+				throw new ModLoadingException(String.format("Unable to satisfy requirements %s. Available mods: %s.", externalRequirements, solver), udge);
+			}
+		}
+
+		if (!requirementsAdded) {
+			var groupedRequirements = externalRequirements.stream()
+					.collect(Collectors.groupingBy(dep -> getNode(dep.modName()), LinkedHashMap::new, Collectors.toList()));
+
+			for (var entry : groupedRequirements.entrySet()) {
+				var node = entry.getKey();
+				var depList = entry.getValue();
+
+				node.setExternalDependency(depList);
+			}
+
+			requirementsAdded = true;
+		}
 
-	public Map<String, ModInfo> selectModVersions() throws ModLoadingException {
 		/*
 
 		For now assume that the dependencies that a mod requires don't change
@@ -52,16 +117,16 @@ public final class VersionSelector {
 		*/
 
 		try {
-			outerLoop:
-			while(true) {
-				for(var node : nodeCache.values()) {
-					if(node.isRequired() && node.chosenVersion() == null) {
-						node.chooseVersion();
-						continue outerLoop;
-					}
+			// Nodes add themselves to the worklist when they gain a requirement or lose their chosen version
+			DependencyNode node;
+			while ((node = nextInWorklist()) != null) {
+				if (cancelled.getAsBoolean()) {
+					throw new CancellationException("The search was cancelled");
 				}
 
-				break;
+				if (node.isRequired() && node.chosenVersion() == null) {
+					node.chooseVersion();
+				}
 			}
 
 			return nodeCache.values().stream()
@@ -78,7 +143,195 @@ public final class VersionSelector {
 		}
 	}
 
+	/**
+	 * Selects versions again after the available mods or the root requirements have changed. The selector must have
+	 * been created with the mod source and requirements that the previous selection was made from.
+	 * <br>
+	 * If the previous selection still meets every requirement after the change, it is kept, without any mods that are
+	 * no longer needed. Only the requirements reachable from the roots are checked. Otherwise only the mods whose
+	 * previous version no longer meets a requirement on it are solved again, along with any mods that their new versions
+	 * need. Every other mod keeps its previous version, and is not read from the mod source. If that part of the graph
+	 * cannot be solved with the other mods fixed, the mods that depend on it, and the fixed mods that it needs, are added
+	 * to it and it is solved again, until it is solved or there is nothing left to add.
+	 * <br>
+	 * The part of the graph is solved with the strategy of this selector. {@link SelectionStrategy#CONFLICT_DRIVEN} and
+	 * {@link SelectionStrategy#PORTFOLIO} both use the conflict-driven search, choosing the previously selected version of
+	 * each mod wherever it is still possible. The other strategies choose versions as they would from scratch. Newly
+	 * added versions never replace the previous version of a mod outside of that part of the graph.
+	 *
+	 * @param previousSelection the selection made before the change
+	 * @param delta the change to the available mods and root requirements
+	 * @return the new selection, and the mods that changed
+	 * @throws ModLoadingException if the requirements cannot be met after the change
+	 */
+	public SelectionUpdate reselect(Map<String, ModInfo> previousSelection, ModDelta delta) throws ModLoadingException {
+		var requirements = delta.requirements(externalRequirements);
+
+		// The mods that are solved again
+		var region = brokenMods(previousSelection, requirements, delta);
+
+		while (true) {
+			List<ModDependency> regionRequirements = new ArrayList<>();
+			var fixed = fixedMods(previousSelection, requirements, region, regionRequirements);
+
+			if (region.isEmpty()) {
+				return new SelectionUpdate(previousSelection, fixed);
+			}
+
+			// The fixed mods that the new versions in the region need
+			Set<String> fixedNeeded = new HashSet<>();
+
+			try {
+				var solved = solveRegion(regionSource(fixed, delta, fixedNeeded), regionRequirements, previousSelection);
+
+				return new SelectionUpdate(previousSelection, combine(fixed, solved, requirements));
+			} catch (ModLoadingException mle) {
+				// Widens the region to the fixed mods that it touches
+				var touching = new ArrayList<>(fixedNeeded);
+
+				for (var info : fixed.values()) {
+					if (info.dependencies().stream().anyMatch(dependency -> region.contains(dependency.modName()))) {
+						touching.add(info.name());
+					}
+				}
+
+				if (!region.addAll(touching)) {
+					throw mle;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A fixed mod, as seen by the search of the region. Its dependencies are left out, as they were met before the
+	 * change, and are checked again as requirements of the region if they need a mod in it.
+	 */
+	private static final class FixedModInfo extends ModInfo {
+		FixedModInfo(ModInfo info) {
+			super(info.name(), info.version(), info.moduleName(), Collections.emptyList());
+		}
+	}
+
+	/**
+	 * Returns the names of the mods that a requirement reachable from the roots through the previous selection is no
+	 * longer met by
+	 */
+	private static Set<String> brokenMods(Map<String, ModInfo> previousSelection, Collection<ModDependency> requirements, ModDelta delta) {
+		Set<String> broken = new LinkedHashSet<>();
+		Set<String> checked = new HashSet<>();
+		Deque<ModDependency> unchecked = new ArrayDeque<>(requirements);
+
+		while (!unchecked.isEmpty()) {
+			var requirement = unchecked.poll();
+			var info = previousSelection.get(requirement.modName());
+
+			if (info == null || delta.isRemoved(info) || !requirement.isMetBy(info.version())) {
+				broken.add(requirement.modName());
+			} else if (checked.add(info.name())) {
+				unchecked.addAll(info.dependencies());
+			}
+		}
+
+		return broken;
+	}
+
+	/**
+	 * Returns the previously selected mods that are reachable from the roots without passing through the region. Every
+	 * requirement on a mod in the region, from the roots or from one of those mods, is added to regionRequirements.
+	 */
+	private static Map<String, ModInfo> fixedMods(Map<String, ModInfo> previousSelection, Collection<ModDependency> requirements, Set<String> region, List<ModDependency> regionRequirements) {
+		Map<String, ModInfo> fixed = new LinkedHashMap<>();
+		Deque<ModDependency> unchecked = new ArrayDeque<>(requirements);
+
+		while (!unchecked.isEmpty()) {
+			var requirement = unchecked.poll();
+			var name = requirement.modName();
+
+			if (region.contains(name)) {
+				regionRequirements.add(requirement);
+			} else if (!fixed.containsKey(name)) {
+				var info = previousSelection.get(name);
+
+				fixed.put(name, info);
+				unchecked.addAll(info.dependencies());
+			}
+		}
+
+		return fixed;
+	}
+
+	/**
+	 * Returns a mod source that gives the versions of the mods in the region after the change, and only the fixed
+	 * version of each fixed mod. The name of each fixed mod that is asked for is added to fixedNeeded.
+	 */
+	private ModSource regionSource(Map<String, ModInfo> fixed, ModDelta delta, Set<String> fixedNeeded) {
+		return new ModSource() {
+			@Override
+			public Collection<ModInfo> availableMods(String modName) {
+				var info = fixed.get(modName);
+
+				if (info != null) {
+					fixedNeeded.add(modName);
+					return List.of(new FixedModInfo(info));
+				}
+
+				return delta.availableMods(modName, modSource.availableMods(modName));
+			}
+
+			@Override
+			public ModuleLayer loadLayer(ModInfo modInfo, List<ModuleLayer> parentLayers) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private Map<String, ModInfo> solveRegion(ModSource source, Collection<ModDependency> requirements, Map<String, ModInfo> previousSelection) throws ModLoadingException {
+		if (strategy != SelectionStrategy.CONFLICT_DRIVEN && strategy != SelectionStrategy.PORTFOLIO) {
+			return new VersionSelector(source, requirements).strategy(strategy).selectModVersions();
+		}
+
+		var solver = new ConflictDrivenSolver(new ModCatalog(source), requirements).preferring(previousSelection);
+
+		try {
+			return solver.solve();
+		} catch (UnsolvableModGraphException udge) {
+			throw new ModLoadingException(String.format("Unable to satisfy requirements %s. Available mods: %s.", requirements, solver), udge);
+		}
+	}
+
+	/**
+	 * Returns the mods needed by the requirements, taking the fixed version of each fixed mod and the solved version of
+	 * every other mod
+	 */
+	private static Map<String, ModInfo> combine(Map<String, ModInfo> fixed, Map<String, ModInfo> solved, Collection<ModDependency> requirements) {
+		Map<String, ModInfo> result = new HashMap<>();
+		Deque<ModDependency> unchecked = new ArrayDeque<>(requirements);
+
+		while (!unchecked.isEmpty()) {
+			var name = unchecked.poll().modName();
+			var info = fixed.containsKey(name) ? fixed.get(name) : solved.get(name);
+
+			if (result.put(name, info) == null) {
+				unchecked.addAll(info.dependencies());
+			}
+		}
+
+		return result;
+	}
+
+	private DependencyNode nextInWorklist() {
+		var iterator = worklist.iterator();
+
+		if (!iterator.hasNext()) {
+			return null;
+		}
+
+		var node = iterator.next();
+		iterator.remove();
+		return node;
+	}
+
 	private DependencyNode getNode(String modName) {
-		return nodeCache.computeIfAbsent(modName, key -> new DependencyNode(key, modSource, this::getNode));
+		return nodeCache.computeIfAbsent(modName, key -> new DependencyNode(key, modSource, this::getNode, worklist::add));
 	}
 }
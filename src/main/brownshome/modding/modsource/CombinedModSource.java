@@ -4,6 +4,7 @@ import brownshome.modding.Mod;
 import brownshome.modding.ModInfo;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -16,7 +17,7 @@ final class CombinedModSource extends ModSource {
 
 	CombinedModSource(Collection<ModSource> subSources) {
 		this.subSources = subSources;
-		sourceMap = new HashMap<>();
+		sourceMap = new ConcurrentHashMap<>();
 	}
 
 	@Override
@@ -45,6 +46,15 @@ final class CombinedModSource extends ModSource {
 		return source.loadLayer(info, parentLayers);
 	}
 
+	@Override
+	public String sourceIdentity(ModInfo info) {
+		availableMods(info.name());
+
+		var source = sourceMap.get(info.name()).get(info);
+
+		return source == null ? toString() : source.sourceIdentity(info);
+	}
+
 	@Override
 	public String toString() {
 		return subSources.stream().map(Object::toString).collect(Collectors.joining(", ", "Combined [", "]"));
@@ -0,0 +1,63 @@
+package brownshome.modding.modsource;
+
+import brownshome.modding.ModInfo;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * The mods from a source, grouped by name. The mods are read in a single pass the first time that they are queried,
+ * and every later query is answered from the index. This class is thread-safe.
+ */
+final class ModIndex {
+	private final Supplier<? extends Iterable<ModInfo>> mods;
+	private volatile Map<String, List<ModInfo>> versions;
+
+	/**
+	 * @param mods reads every mod from the source, this is called at most once
+	 */
+	ModIndex(Supplier<? extends Iterable<ModInfo>> mods) {
+		this.mods = mods;
+	}
+
+	/**
+	 * Returns the versions of a mod, oldest first. The list cannot be modified.
+	 */
+	List<ModInfo> availableMods(String modName) {
+		return versions().getOrDefault(modName, List.of());
+	}
+
+	private Map<String, List<ModInfo>> versions() {
+		var result = versions;
+
+		if (result == null) {
+			synchronized (this) {
+				result = versions;
+
+				if (result == null) {
+					versions = result = createIndex();
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private Map<String, List<ModInfo>> createIndex() {
+		Map<String, List<ModInfo>> grouped = new HashMap<>();
+
+		for (var info : mods.get()) {
+			grouped.computeIfAbsent(info.name(), unused -> new ArrayList<>()).add(info);
+		}
+
+		Map<String, List<ModInfo>> result = new HashMap<>();
+
+		for (var entry : grouped.entrySet()) {
+			var list = entry.getValue();
+			list.sort(ModInfo.VERSION_COMPARATOR);
+			result.put(entry.getKey(), Collections.unmodifiableList(list));
+		}
+
+		return result;
+	}
+}
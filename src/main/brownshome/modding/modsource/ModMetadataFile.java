@@ -0,0 +1,126 @@
+package brownshome.modding.modsource;
+
+import brownshome.modding.ModDependency;
+import brownshome.modding.ModInfo;
+import brownshome.modding.ModVersion;
+import brownshome.modding.util.DependencyRules;
+import brownshome.modding.util.RuleModDependency;
+import brownshome.modding.util.SemanticVersionInterner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A text file listing the mods in a jar or directory, so that a mod source can read them without loading any classes.
+ * It is written by the annotation processor next to the generated info classes.
+ * <br>
+ * The file starts with a header line. Each mod has a line of its own, followed by a line for each of its requirements.
+ * Fields are separated by tabs:
+ * <pre>
+ * brownshome.modding.index	1
+ * mod	&lt;name&gt;	&lt;version&gt;	&lt;module name&gt;	&lt;info class&gt;
+ * requires	&lt;name&gt;	&lt;version&gt;	&lt;rule&gt;
+ * </pre>
+ * Versions are semantic versions, and rules are the names of {@link DependencyRules} constants. The info class is the
+ * name of the {@link ModInfo} class that the file describes, which is also listed as a service.
+ */
+public final class ModMetadataFile {
+	/** The location of the file in a jar or directory */
+	public static final String LOCATION = "META-INF/brownshome.modding.index";
+
+	/** The first line of the file */
+	public static final String HEADER = "brownshome.modding.index\t1";
+
+	private static final class IndexedModInfo extends ModInfo {
+		final String infoClass;
+
+		IndexedModInfo(String name, ModVersion version, String moduleName, String infoClass, List<ModDependency> dependencies) {
+			super(name, version, moduleName, Collections.unmodifiableList(dependencies));
+
+			this.infoClass = infoClass;
+		}
+	}
+
+	private ModMetadataFile() { }
+
+	/**
+	 * Returns the line describing a mod
+	 */
+	public static String modLine(String name, String version, String moduleName, String infoClass) {
+		return String.join("\t", "mod", name, version, moduleName, infoClass);
+	}
+
+	/**
+	 * Returns the line describing a requirement of the mod on the previous mod line
+	 */
+	public static String requirementLine(String name, String version, DependencyRules rule) {
+		return String.join("\t", "requires", name, version, rule.name());
+	}
+
+	/**
+	 * Returns the name of the info class that a mod read from a file describes, or null if it was not read from a file
+	 */
+	static String infoClass(ModInfo info) {
+		return info instanceof IndexedModInfo ? ((IndexedModInfo) info).infoClass : null;
+	}
+
+	/**
+	 * Reads the mods described by the contents of a file.
+	 *
+	 * @param location a description of where the file was read from, used in error messages
+	 * @param versions used to share version objects between files
+	 * @throws IOException if the file is malformed
+	 */
+	static List<ModInfo> read(String contents, String location, SemanticVersionInterner versions) throws IOException {
+		var lines = contents.lines().iterator();
+
+		if (!lines.hasNext() || !lines.next().equals(HEADER)) {
+			throw new IOException(String.format("'%s' does not start with '%s'", location, HEADER));
+		}
+
+		var result = new ArrayList<ModInfo>();
+
+		// The fields of the mod being read, which is created when the next mod line or the end of the file is reached
+		String[] mod = null;
+		List<ModDependency> requirements = null;
+
+		for (int lineNumber = 2; lines.hasNext(); lineNumber++) {
+			var line = lines.next();
+
+			if (line.isEmpty()) {
+				continue;
+			}
+
+			var fields = line.split("\t", -1);
+
+			try {
+				if (fields[0].equals("mod") && fields.length == 5) {
+					if (mod != null) {
+						result.add(new IndexedModInfo(mod[1], versions.parse(mod[2]), mod[3], mod[4], requirements));
+					}
+
+					mod = fields;
+					requirements = new ArrayList<>();
+				} else if (fields[0].equals("requires") && fields.length == 4 && mod != null) {
+					requirements.add(new RuleModDependency(fields[1], versions.parse(fields[2]), DependencyRules.valueOf(fields[3])));
+				} else {
+					throw new IOException(String.format("Malformed line %d in '%s': %s", lineNumber, location, line));
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException(String.format("Malformed line %d in '%s': %s", lineNumber, location, line), e);
+			}
+		}
+
+		if (mod != null) {
+			try {
+				result.add(new IndexedModInfo(mod[1], versions.parse(mod[2]), mod[3], mod[4], requirements));
+			} catch (IllegalArgumentException e) {
+				throw new IOException(String.format("Malformed mod line in '%s': %s", location, String.join("\t", mod)), e);
+			}
+		}
+
+		return result;
+	}
+}
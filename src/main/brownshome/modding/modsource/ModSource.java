@@ -77,13 +77,11 @@ public abstract class ModSource {
 	public static ModSource fromClasspath() {
 		return new ModSource() {
 			final ServiceLoader<ModInfo> modInfoLoader = ServiceLoader.load(ModInfo.class, ClassLoader.getSystemClassLoader());
+			final ModIndex index = new ModIndex(() -> modInfoLoader);
 
 			@Override
 			public Collection<ModInfo> availableMods(String modName) {
-				return modInfoLoader.stream()
-						.map(ServiceLoader.Provider::get)
-						.filter(info -> info.name().equals(modName))
-						.collect(Collectors.toList());
+				return index.availableMods(modName);
 			}
 
 			@Override
@@ -97,6 +95,11 @@ public abstract class ModSource {
 				return ModuleLayer.boot();
 			}
 
+			@Override
+			public String sourceIdentity(ModInfo info) {
+				return toString();
+			}
+
 			@Override
 			public String toString() {
 				return "Classpath";
@@ -122,6 +125,15 @@ public abstract class ModSource {
 	 */
 	public abstract Collection<ModInfo> availableMods(String modName);
 
+	/**
+	 * Returns a description of where a mod is loaded from. This is recorded in lock files, so that a locked mod is not
+	 * used if it is later found in a different place. This must be the same each time the source is created. By default
+	 * this is the name of the source class.
+	 */
+	public String sourceIdentity(ModInfo info) {
+		return getClass().getName();
+	}
+
 	/**
 	 * Loads a mod class by name and version
 	 **/
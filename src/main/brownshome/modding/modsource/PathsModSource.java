@@ -1,27 +1,47 @@
 package brownshome.modding.modsource;
 
+import browngu.logging.Logger;
+import browngu.logging.Severity;
+
 import brownshome.modding.ModInfo;
+import brownshome.modding.util.SemanticVersionInterner;
 
+import java.io.IOException;
 import java.lang.module.Configuration;
 import java.lang.module.ModuleFinder;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
 
 /**
  * Uses a collection of paths as a source of mods. The paths can be directories containing exploded class structures or
  * point to single JAR files. Paths pointing to directories of JAR files will not be explored.
+ * <br>
+ * The mods in each path are read from the {@link ModMetadataFile} written by the annotation processor, if there is one.
+ * An info class is only loaded if a path lists it as a service but does not describe it in such a file, so a path with
+ * only generated mods loads no classes. Mods listed as services by hand are still loaded from paths with an index.
  */
 final class PathsModSource extends ModSource {
+	private static final String INFO_SERVICE_FILE = "META-INF/services/" + ModInfo.class.getName();
+
+	private final List<Path> paths;
 	private final ModuleFinder moduleFinder;
-	private final ServiceLoader<ModInfo> infoServiceLoader;
 	private final ClassLoader infoClassLoader;
+	private final ModIndex index;
 	private final String name;
 
+	/** The path that each mod was read from, filled in when the index is created */
+	private final Map<ModInfo, Path> modPaths = new ConcurrentHashMap<>();
+
 	PathsModSource(Collection<Path> paths) {
+		this.paths = List.copyOf(paths);
 		this.moduleFinder = ModuleFinder.of(paths.toArray(new Path[0]));
 
 		var urls = paths.stream().map(f -> {
@@ -34,30 +54,122 @@ final class PathsModSource extends ModSource {
 
 		// Load the mods outside of the module system as an unnamed module, as we can't load dependencies yet.
 		infoClassLoader = new URLClassLoader(String.format("URLClassLoader %s", Arrays.toString(urls)), urls, Thread.currentThread().getContextClassLoader());
-		infoServiceLoader = ServiceLoader.load(ModInfo.class, infoClassLoader);
+		index = new ModIndex(this::readMods);
 		name = String.format("URL %s", Arrays.toString(urls));
 	}
 
-	@Override
-	public Collection<ModInfo> availableMods(String modName) {
-		List<ModInfo> availableVersions = new ArrayList<>();
+	private List<ModInfo> readMods() {
+		// A set, as the same mod may be found in more than one path, in which case the first is used
+		Set<ModInfo> mods = new LinkedHashSet<>();
+		var versions = new SemanticVersionInterner();
 
-		for (var info : infoServiceLoader) {
-			if (info.getClass().getClassLoader() != infoClassLoader) {
-				// Ignore any mods loaded from the parent classpath
-				continue;
+		for (var path : paths) {
+			List<String> infoClasses;
+
+			try {
+				var services = readEntry(path, INFO_SERVICE_FILE);
+				infoClasses = services == null ? List.of() : serviceNames(services);
+			} catch (IOException e) {
+				Logger.logger().log(Severity.INFO, "Unable to read the mod services of '%s': %s", path, e.getMessage());
+				infoClasses = List.of();
+			}
+
+			try {
+				var index = readEntry(path, ModMetadataFile.LOCATION);
+
+				if (index != null) {
+					var indexedClasses = new HashSet<String>();
+
+					for (var info : ModMetadataFile.read(index, path + "!/" + ModMetadataFile.LOCATION, versions)) {
+						if (mods.add(info)) {
+							modPaths.put(info, path);
+						}
+
+						indexedClasses.add(ModMetadataFile.infoClass(info));
+					}
+
+					// Service entries that were not written by the annotation processor are not in the index
+					infoClasses = new ArrayList<>(infoClasses);
+					infoClasses.removeAll(indexedClasses);
+				}
+			} catch (IOException e) {
+				Logger.logger().log(Severity.INFO, "Unable to read the mod index of '%s', loading its mods instead: %s", path, e.getMessage());
+			}
+
+			for (var infoClass : infoClasses) {
+				var info = loadInfo(path, infoClass);
+
+				if (info != null && mods.add(info)) {
+					modPaths.put(info, path);
+				}
+			}
+		}
+
+		return new ArrayList<>(mods);
+	}
+
+	/**
+	 * Returns the class names listed in a service file, ignoring comments and blank lines
+	 */
+	private static List<String> serviceNames(String services) {
+		var result = new ArrayList<String>();
+
+		for (var line : (Iterable<String>) services.lines()::iterator) {
+			int comment = line.indexOf('#');
+			var name = (comment == -1 ? line : line.substring(0, comment)).trim();
+
+			if (!name.isEmpty()) {
+				result.add(name);
 			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates an instance of an info class listed as a service by a path, returning null if it cannot be loaded
+	 */
+	private ModInfo loadInfo(Path path, String infoClass) {
+		try {
+			var cls = Class.forName(infoClass, true, infoClassLoader);
 
-			if (!info.name().equals(modName)) {
-				continue;
+			if (cls.getClassLoader() != infoClassLoader) {
+				// Ignore any mods loaded from the parent classpath
+				return null;
 			}
 
-			availableVersions.add(info);
+			return cls.asSubclass(ModInfo.class).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+			Logger.logger().log(Severity.INFO, "Unable to load mod info '%s' from '%s': %s", infoClass, path, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a file from a directory or JAR file, returning null if it does not exist
+	 */
+	private static String readEntry(Path path, String name) throws IOException {
+		if (Files.isDirectory(path)) {
+			var file = path.resolve(name);
+			return Files.isRegularFile(file) ? Files.readString(file) : null;
 		}
 
-		availableVersions.sort(null);
+		try (var jar = new ZipFile(path.toFile())) {
+			var entry = jar.getEntry(name);
+
+			if (entry == null) {
+				return null;
+			}
 
-		return availableVersions;
+			try (var input = jar.getInputStream(entry)) {
+				return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+			}
+		}
+	}
+
+	@Override
+	public Collection<ModInfo> availableMods(String modName) {
+		return index.availableMods(modName);
 	}
 
 	@Override
@@ -74,6 +186,20 @@ final class PathsModSource extends ModSource {
 		return ModuleLayer.defineModulesWithManyLoaders(configuration, parents, parentClassLoader).layer();
 	}
 
+	/**
+	 * Returns the path of the directory or JAR file that holds the mod, so that the identity of a mod does not change when
+	 * other paths are added or removed.
+	 */
+	@Override
+	public String sourceIdentity(ModInfo info) {
+		// Make sure that the paths have been read
+		index.availableMods(info.name());
+
+		var path = modPaths.get(info);
+
+		return path == null ? name : path.toAbsolutePath().normalize().toString();
+	}
+
 	@Override
 	public String toString() {
 		return name;
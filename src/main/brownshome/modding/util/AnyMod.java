@@ -20,6 +20,28 @@ public class AnyMod implements ModDependency {
 		return true;
 	}
 
+	@Override
+	public VersionRange range() {
+		return VersionRange.ANY;
+	}
+
+	@Override
+	public boolean isLowerBound() {
+		return true;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof AnyMod)) return false;
+		return modName.equals(((AnyMod) o).modName);
+	}
+
+	@Override
+	public int hashCode() {
+		return modName.hashCode();
+	}
+
 	@Override
 	public String toString() {
 		return String.format("ANY %s", modName);
@@ -0,0 +1,53 @@
+package brownshome.modding.util;
+
+import brownshome.modding.LoadingStageName;
+
+import java.util.Objects;
+
+/**
+ * The name of a batched stage, along with the type of the values contributed to it. Two names are equal if they have
+ * the same name and type.
+ *
+ * @param <T> the type of the contributions
+ * @see brownshome.modding.BatchHandler
+ */
+public final class BatchedStageName<T> implements LoadingStageName {
+	private final String name;
+	private final Class<T> type;
+
+	public BatchedStageName(String name, Class<T> type) {
+		this.name = Objects.requireNonNull(name);
+		this.type = Objects.requireNonNull(type);
+	}
+
+	/**
+	 * The type of the values contributed to this stage
+	 */
+	public Class<T> type() {
+		return type;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) {
+			return true;
+		}
+
+		if (!(other instanceof BatchedStageName)) {
+			return false;
+		}
+
+		var otherName = (BatchedStageName<?>) other;
+		return name.equals(otherName.name) && type.equals(otherName.type);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, type);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
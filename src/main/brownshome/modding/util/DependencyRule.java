@@ -5,4 +5,20 @@ import brownshome.modding.ModVersion;
 @FunctionalInterface
 public interface DependencyRule {
 	boolean meets(ModVersion required, ModVersion v);
+
+	/**
+	 * Returns the range of versions that meet this rule, or null if the rule cannot be expressed as a range. The range
+	 * must contain exactly the semantic versions that meet the rule.
+	 */
+	default VersionRange range(ModVersion required) {
+		return null;
+	}
+
+	/**
+	 * Returns true if this rule only sets a lowest version, so that any newer version meets the rule as long as it is
+	 * compatible with the required version. Such rules can be met by minimal version selection.
+	 */
+	default boolean isLowerBound() {
+		return false;
+	}
 }
@@ -3,6 +3,8 @@ package brownshome.modding.util;
 import brownshome.modding.ModVersion;
 import brownshome.modding.util.DependencyRule;
 
+import java.util.function.Function;
+
 public enum DependencyRules implements DependencyRule {
 	/**
 	 * Requires a particular version of a mod, ignoring build information
@@ -12,6 +14,11 @@ public enum DependencyRules implements DependencyRule {
 		public boolean meets(ModVersion required, ModVersion v) {
 			return v.matches(required);
 		}
+
+		@Override
+		public VersionRange range(ModVersion required) {
+			return semantic(required, VersionRange::exactly);
+		}
 	},
 
 	NEWER() {
@@ -19,6 +26,16 @@ public enum DependencyRules implements DependencyRule {
 		public boolean meets(ModVersion required, ModVersion v) {
 			return v.isNewerThan(required);
 		}
+
+		@Override
+		public VersionRange range(ModVersion required) {
+			return semantic(required, VersionRange::above);
+		}
+
+		@Override
+		public boolean isLowerBound() {
+			return true;
+		}
 	},
 
 	NEWER_OR_EQUAL() {
@@ -26,6 +43,16 @@ public enum DependencyRules implements DependencyRule {
 		public boolean meets(ModVersion required, ModVersion v) {
 			return v.isNewerThan(required) || v.matches(required);
 		}
+
+		@Override
+		public VersionRange range(ModVersion required) {
+			return semantic(required, VersionRange::atLeast);
+		}
+
+		@Override
+		public boolean isLowerBound() {
+			return true;
+		}
 	},
 
 	OLDER() {
@@ -33,6 +60,11 @@ public enum DependencyRules implements DependencyRule {
 		public boolean meets(ModVersion required, ModVersion v) {
 			return required.isNewerThan(v);
 		}
+
+		@Override
+		public VersionRange range(ModVersion required) {
+			return semantic(required, VersionRange::below);
+		}
 	},
 
 	OLDER_OR_EQUAL() {
@@ -40,6 +72,11 @@ public enum DependencyRules implements DependencyRule {
 		public boolean meets(ModVersion required, ModVersion v) {
 			return required.isNewerThan(v) || v.matches(required);
 		}
+
+		@Override
+		public VersionRange range(ModVersion required) {
+			return semantic(required, VersionRange::atMost);
+		}
 	},
 
 	/**
@@ -50,6 +87,11 @@ public enum DependencyRules implements DependencyRule {
 		public boolean meets(ModVersion required, ModVersion v) {
 			return !v.matches(required);
 		}
+
+		@Override
+		public VersionRange range(ModVersion required) {
+			return semantic(required, VersionRange::except);
+		}
 	},
 
 	/**
@@ -61,5 +103,36 @@ public enum DependencyRules implements DependencyRule {
 		public boolean meets(ModVersion required, ModVersion v) {
 			return v.isCompatibleWith(required);
 		}
+
+		@Override
+		public VersionRange range(ModVersion required) {
+			return semantic(required, version -> {
+				if (version.major() == 0 || version.preReleaseCode() != null) {
+					return VersionRange.exactly(version);
+				}
+
+				// Any release with the same major version, and a minor version at least as high
+				var lower = new SemanticModVersion(version.major(), version.minor(), 0);
+				var upper = new SemanticModVersion(version.major() + 1, 0, 0);
+
+				return VersionRange.between(lower, upper).releasesOnly();
+			});
+		}
+
+		@Override
+		public boolean isLowerBound() {
+			return true;
+		}
 	};
+
+	/**
+	 * Creates a range if the required version is a semantic version
+	 */
+	private static VersionRange semantic(ModVersion required, Function<SemanticModVersion, VersionRange> range) {
+		if (!(required instanceof SemanticModVersion)) {
+			return null;
+		}
+
+		return range.apply((SemanticModVersion) required);
+	}
 }
@@ -3,11 +3,14 @@ package brownshome.modding.util;
 import brownshome.modding.ModDependency;
 import brownshome.modding.ModVersion;
 
+import java.util.Objects;
+
 public class RuleModDependency implements ModDependency {
 	private final String modName;
 
 	private final ModVersion version;
 	private final DependencyRule rule;
+	private final VersionRange range;
 
 	/**
 	 * Creates a dependency object.
@@ -19,16 +22,53 @@ public class RuleModDependency implements ModDependency {
 		this.modName = modName;
 		this.version = version;
 		this.rule = rule;
+		this.range = rule.range(version);
 	}
 
 	public boolean isMetBy(ModVersion version) {
 		return rule.meets(this.version, version);
 	}
 
+	@Override
+	public VersionRange range() {
+		return range;
+	}
+
+	@Override
+	public boolean isLowerBound() {
+		return rule.isLowerBound();
+	}
+
 	public String modName() {
 		return modName;
 	}
 
+	/**
+	 * Returns the version that the rule is tested against
+	 */
+	public ModVersion version() {
+		return version;
+	}
+
+	public DependencyRule rule() {
+		return rule;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof RuleModDependency)) return false;
+		RuleModDependency that = (RuleModDependency) o;
+		return modName.equals(that.modName) &&
+				version.equals(that.version) &&
+				rule.equals(that.rule);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(modName, version, rule);
+	}
+
 	@Override
 	public String toString() {
 		return String.format("%s %s@%s", rule, modName(), version);
@@ -3,98 +3,259 @@ package brownshome.modding.util;
 import brownshome.modding.ModVersion;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 public final class SemanticModVersion extends ModVersion {
+	private static final long[] NO_NUMBERS = new long[0];
+	private static final String[] NO_WORDS = new String[0];
+
 	private final int major, minor, patch;
 	private final String preReleaseCode;
 	private final String buildMetadata;
 
-	public static SemanticModVersion createVersion(String versionString) {
-		// Semantic version strings can only contain [0-9A-Za-z-.+]
-
-		class Parser {
-			int minor, major, patch;
-			String preReleaseCode, buildMetadata;
-
-			CharSequence sourceData;
+	/*
+	 * The identifiers of the pre-release code, parsed once so that versions can be compared without allocating. Each
+	 * identifier is either a word, or a number held in preReleaseNumbers. A number that does not fit in a long is also
+	 * held in preReleaseBigNumbers, which is null if there are none.
+	 */
+	private final String[] preReleaseWords;
+	private final long[] preReleaseNumbers;
+	private final BigInteger[] preReleaseBigNumbers;
+
+	/**
+	 * Reads a version from text in a single pass, by index, without copying the numeric parts of the text.
+	 */
+	private static final class Parser {
+		final CharSequence text;
+		final int start, end;
+		int position;
+
+		Parser(CharSequence text, int start, int end) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+			this.position = start;
+		}
 
-			Parser(CharSequence sourceData) { this.sourceData = sourceData; }
+		SemanticModVersion parse() {
+			int major = number("major");
+			expect('.');
+			int minor = number("minor");
+			expect('.');
+			int patch = number("patch");
 
-			SemanticModVersion parse() {
-				major = extractNumber();
-				skipDot();
-				minor = extractNumber();
-				skipDot();
-				patch = extractNumber();
+			String preReleaseCode = null, buildMetadata = null;
 
-				populateReleaseAndBuild();
+			if (position < end && text.charAt(position) == '-') {
+				position++;
+				preReleaseCode = identifiers("pre-release code", true);
+			}
 
-				return new SemanticModVersion(major, minor, patch, preReleaseCode, buildMetadata);
+			if (position < end && text.charAt(position) == '+') {
+				position++;
+				buildMetadata = identifiers("build metadata", false);
 			}
 
-			private void skipDot() {
-				sourceData = sourceData.subSequence(1, sourceData.length());
+			if (position != end) {
+				throw error(String.format("unexpected character '%c'", text.charAt(position)));
 			}
 
-			private int extractNumber() {
-				int n = 0;
-				int i;
+			return new SemanticModVersion(major, minor, patch, preReleaseCode, buildMetadata);
+		}
 
-				for (i = 0; i < sourceData.length(); i++) {
-					char c = sourceData.charAt(i);
+		private int number(String part) {
+			int from = position;
+			int n = 0;
 
-					if (c == '.' || c == '-' || c == '+') break;
+			for (; position < end; position++) {
+				char c = text.charAt(position);
 
-					if (c < '0' || c > '9') throw new NumberFormatException();
+				if (c < '0' || c > '9') {
+					break;
+				}
 
-					n = n * 10 + c - '0';
+				if (n > (Integer.MAX_VALUE - (c - '0')) / 10) {
+					throw error(String.format("the %s version is too large", part));
 				}
 
-				sourceData = sourceData.subSequence(i, sourceData.length());
+				n = n * 10 + c - '0';
+			}
 
-				return n;
+			if (position == from) {
+				throw error(String.format("expected the %s version", part));
 			}
 
-			private void populateReleaseAndBuild() {
-				if (sourceData.length() == 0) {
-					return;
-				}
+			if (position - from > 1 && text.charAt(from) == '0') {
+				position = from;
+				throw error(String.format("the %s version has a leading zero", part));
+			}
 
-				char c = sourceData.charAt(0);
+			return n;
+		}
 
-				boolean hasReleaseCode = c == '-';
+		/**
+		 * Rejects a numeric identifier, ending at the current position, that has a leading zero
+		 */
+		private void checkLeadingZero(int identifierStart, boolean numeric, String part) {
+			if (numeric && position - identifierStart > 1 && text.charAt(identifierStart) == '0') {
+				position = identifierStart;
+				throw error(String.format("a numeric identifier in the %s has a leading zero", part));
+			}
+		}
 
-				for (int i = 1; i < sourceData.length(); i++) {
-					c = sourceData.charAt(i);
+		/**
+		 * Rejects an identifier, ending at the current position, that is empty
+		 */
+		private void checkEmpty(int identifierStart, String part) {
+			if (position == identifierStart) {
+				throw error(String.format("an identifier in the %s is empty", part));
+			}
+		}
 
-					if (sourceData.charAt(i) == '+') {
-						assert hasReleaseCode;
+		private void expect(char expected) {
+			if (position == end || text.charAt(position) != expected) {
+				throw error(String.format("expected '%c'", expected));
+			}
 
-						preReleaseCode = sourceData.subSequence(1, i).toString();
-						buildMetadata = sourceData.subSequence(i + 1, sourceData.length()).toString();
+			position++;
+		}
 
-						continue;
-					}
+		/**
+		 * Reads dot separated identifiers, up to a '+' or the end of the text
+		 *
+		 * @param numbersHavePrecedence if true, numeric identifiers are compared as numbers, so leading zeros are rejected
+		 */
+		private String identifiers(String part, boolean numbersHavePrecedence) {
+			int from = position;
 
-					if((c < '0' || c > '9') && (c < 'a' || c > 'z') && (c < 'A' || c > 'Z') && c != '-' && c != '.') {
-						throw new IllegalArgumentException("'" + c + "' is not a valid character in semantic versioning");
-					}
+			// The start of the current identifier, and whether it is all digits so far
+			int identifierStart = position;
+			boolean numeric = true;
+
+			for (; position < end; position++) {
+				char c = text.charAt(position);
+
+				if (c == '+') {
+					break;
 				}
 
-				if (hasReleaseCode) {
-					if (preReleaseCode == null) {
-						preReleaseCode = sourceData.subSequence(1, sourceData.length()).toString();
-					}
-				} else {
-					assert buildMetadata == null;
+				if (c == '.') {
+					checkEmpty(identifierStart, part);
+					checkLeadingZero(identifierStart, numeric && numbersHavePrecedence, part);
+					identifierStart = position + 1;
+					numeric = true;
+					continue;
+				}
 
-					buildMetadata = sourceData.subSequence(1, sourceData.length()).toString();
+				if ((c < '0' || c > '9') && (c < 'a' || c > 'z') && (c < 'A' || c > 'Z') && c != '-') {
+					throw error(String.format("'%c' is not a valid character in semantic versioning", c));
 				}
+
+				numeric &= c >= '0' && c <= '9';
+			}
+
+			checkLeadingZero(identifierStart, numeric && numbersHavePrecedence, part);
+
+			if (position == from) {
+				throw error(String.format("the %s is empty", part));
+			}
+
+			checkEmpty(identifierStart, part);
+
+			return text.subSequence(from, position).toString();
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(String.format("Invalid semantic version '%s' at index %d: %s", text.subSequence(start, end), position - start, message));
+		}
+	}
+
+	/**
+	 * A view of a range of a byte buffer holding ASCII text, which does not change the position of the buffer
+	 */
+	private static final class AsciiSequence implements CharSequence {
+		final ByteBuffer buffer;
+		final int start, end;
+
+		AsciiSequence(ByteBuffer buffer, int start, int end) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer.get(start + index) & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new AsciiSequence(buffer, start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			var chars = new char[length()];
+
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = charAt(i);
 			}
+
+			return new String(chars);
 		}
+	}
 
-		return new Parser(versionString).parse();
+	/**
+	 * Parses a version string, such as <code>1.4.2-alpha.1+build.5</code>.
+	 *
+	 * @throws IllegalArgumentException if the string is not a valid semantic version
+	 */
+	public static SemanticModVersion createVersion(String versionString) {
+		return parse(versionString, 0, versionString.length());
+	}
+
+	/**
+	 * Parses a version from a character sequence.
+	 *
+	 * @throws IllegalArgumentException if the text is not a valid semantic version
+	 */
+	public static SemanticModVersion parse(CharSequence text) {
+		return parse(text, 0, text.length());
+	}
+
+	/**
+	 * Parses a version from a range of a character sequence.
+	 *
+	 * @param start the index of the first character of the version
+	 * @param end the index after the last character of the version
+	 * @throws IllegalArgumentException if the text is not a valid semantic version
+	 */
+	public static SemanticModVersion parse(CharSequence text, int start, int end) {
+		Objects.checkFromToIndex(start, end, text.length());
+
+		return new Parser(text, start, end).parse();
+	}
+
+	/**
+	 * Parses a version from a range of a buffer holding ASCII text. The position and limit of the buffer are not used or
+	 * changed.
+	 *
+	 * @param start the index of the first byte of the version
+	 * @param end the index after the last byte of the version
+	 * @throws IllegalArgumentException if the bytes are not a valid semantic version
+	 */
+	public static SemanticModVersion parse(ByteBuffer buffer, int start, int end) {
+		Objects.checkFromToIndex(start, end, buffer.capacity());
+
+		return new Parser(new AsciiSequence(buffer, start, end), 0, end - start).parse();
 	}
 
 	public SemanticModVersion(int major, int minor, int patch, String preReleaseCode, String buildMetadata) {
@@ -103,6 +264,85 @@ public final class SemanticModVersion extends ModVersion {
 		this.patch = patch;
 		this.preReleaseCode = preReleaseCode;
 		this.buildMetadata = buildMetadata;
+
+		if (preReleaseCode == null) {
+			preReleaseWords = NO_WORDS;
+			preReleaseNumbers = NO_NUMBERS;
+			preReleaseBigNumbers = null;
+			return;
+		}
+
+		var identifiers = splitIdentifiers(preReleaseCode);
+
+		preReleaseWords = new String[identifiers.size()];
+		preReleaseNumbers = new long[identifiers.size()];
+
+		BigInteger[] bigNumbers = null;
+
+		for (int i = 0; i < identifiers.size(); i++) {
+			var identifier = identifiers.get(i);
+
+			if (!isNumber(identifier)) {
+				preReleaseWords[i] = identifier;
+				continue;
+			}
+
+			try {
+				preReleaseNumbers[i] = Long.parseLong(identifier);
+			} catch (NumberFormatException nfe) {
+				if (bigNumbers == null) {
+					bigNumbers = new BigInteger[identifiers.size()];
+				}
+
+				bigNumbers[i] = new BigInteger(identifier);
+			}
+		}
+
+		preReleaseBigNumbers = bigNumbers;
+	}
+
+	/**
+	 * Splits a pre-release code on dots, dropping any empty identifiers at the end, as {@link String#split} does
+	 */
+	private static List<String> splitIdentifiers(String code) {
+		var result = new ArrayList<String>();
+		int start = 0;
+
+		for (int i = 0; i <= code.length(); i++) {
+			if (i == code.length() || code.charAt(i) == '.') {
+				result.add(code.substring(start, i));
+				start = i + 1;
+			}
+		}
+
+		while (result.size() > 1 && result.get(result.size() - 1).isEmpty()) {
+			result.remove(result.size() - 1);
+		}
+
+		if (result.size() == 1 && result.get(0).isEmpty() && !code.isEmpty()) {
+			result.clear();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns true if the identifier is a number, accepting the same strings as {@link BigInteger#BigInteger(String)}
+	 */
+	private static boolean isNumber(String identifier) {
+		int start = identifier.startsWith("-") || identifier.startsWith("+") ? 1 : 0;
+
+		if (start == identifier.length()) {
+			return false;
+		}
+
+		for (int i = start; i < identifier.length(); i++) {
+			if (Character.digit(identifier.charAt(i), 10) == -1) {
+				return false;
+			}
+		}
+
+		return true;
 	}
 
 	public SemanticModVersion(int major, int minor, int patch, String preReleaseCode) {
@@ -156,65 +396,75 @@ public final class SemanticModVersion extends ModVersion {
 	}
 
 	public boolean isNewerThan(SemanticModVersion other) {
+		return compareVersion(other) > 0;
+	}
+
+	/**
+	 * Compares two versions by precedence, ignoring build metadata
+	 */
+	private int compareVersion(SemanticModVersion other) {
 		if (other.major != major)
-			return major > other.major;
+			return Integer.compare(major, other.major);
 
 		if (other.minor != minor)
-			return minor > other.minor;
+			return Integer.compare(minor, other.minor);
 
 		if (other.patch != patch)
-			return patch > other.patch;
+			return Integer.compare(patch, other.patch);
 
-		if (preReleaseCode == null)
-			return other.preReleaseCode != null;
+		// A release is newer than any pre-release
+		if (preReleaseCode == null || other.preReleaseCode == null)
+			return preReleaseCode == null ? (other.preReleaseCode == null ? 0 : 1) : -1;
 
-		// We have a pre-release code
+		int length = Math.min(preReleaseWords.length, other.preReleaseWords.length);
 
-		if (other.preReleaseCode == null) {
-			return false;
+		for (int i = 0; i < length; i++) {
+			int compareValue = compareIdentifier(i, other);
+
+			if (compareValue != 0) {
+				return compareValue;
+			}
 		}
 
-		// Compare the codes
+		// The longer code is newer
+		return Integer.compare(preReleaseWords.length, other.preReleaseWords.length);
+	}
 
-		String[] splitCode = preReleaseCode.split("\\.");
-		String[] otherSplitCode = other.preReleaseCode.split("\\.");
+	private int compareIdentifier(int i, SemanticModVersion other) {
+		var word = preReleaseWords[i];
+		var otherWord = other.preReleaseWords[i];
 
-		for (int i = 0; i < splitCode.length && i < otherSplitCode.length; i++) {
-			String code = splitCode[i], otherCode = otherSplitCode[i];
-			int compareValue;
+		if (word != null || otherWord != null) {
+			if (word != null && otherWord != null) {
+				return word.compareTo(otherWord);
+			}
 
-			BigInteger intParse;
+			// Numeric codes are never newer than non-numeric codes
+			return word == null ? -1 : 1;
+		}
 
-			try {
-				intParse = new BigInteger(code);
-			} catch(NumberFormatException nfe) {
-				intParse = null;
-			}
+		var bigNumber = preReleaseBigNumbers == null ? null : preReleaseBigNumbers[i];
+		var otherBigNumber = other.preReleaseBigNumbers == null ? null : other.preReleaseBigNumbers[i];
 
-			BigInteger otherIntParse;
+		if (bigNumber == null && otherBigNumber == null) {
+			return Long.compare(preReleaseNumbers[i], other.preReleaseNumbers[i]);
+		}
 
-			try {
-				otherIntParse = new BigInteger(otherCode);
-			} catch(NumberFormatException nfe) {
-				otherIntParse = null;
-			}
+		if (bigNumber != null && otherBigNumber != null) {
+			return bigNumber.compareTo(otherBigNumber);
+		}
 
-			if (intParse == null && otherIntParse == null) {
-				compareValue = code.compareTo(otherCode);
-			} else if (intParse != null && otherIntParse != null) {
-				compareValue = intParse.compareTo(otherIntParse);
-			} else {
-				// Numeric codes are never newer than non-numeric codes
-				return otherIntParse != null;
-			}
+		// A number that does not fit in a long is further from zero than one that does
+		return bigNumber != null ? bigNumber.signum() : -otherBigNumber.signum();
+	}
 
-			if (compareValue != 0) {
-				return compareValue > 0;
-			}
+	@Override
+	protected int compareVersion(ModVersion other) {
+		if (!(other instanceof SemanticModVersion)) {
+			return super.compareVersion(other);
 		}
 
-		// The longer code is newer
-		return otherSplitCode.length < splitCode.length;
+		return compareVersion((SemanticModVersion) other);
 	}
 
 	@Override
@@ -226,11 +476,12 @@ public final class SemanticModVersion extends ModVersion {
 		return isNewerThan((SemanticModVersion) other);
 	}
 
+	/**
+	 * Returns true if the versions have the same precedence, ignoring build metadata. Numeric pre-release identifiers
+	 * are compared as numbers, so this agrees with {@link #compareTo} and with {@link VersionRange#exactly}.
+	 */
 	public boolean matches(SemanticModVersion other) {
-		return major == other.major &&
-				minor == other.minor &&
-				patch == other.patch &&
-				Objects.equals(preReleaseCode, other.preReleaseCode);
+		return compareVersion(other) == 0;
 	}
 
 	@Override
@@ -261,7 +512,12 @@ public final class SemanticModVersion extends ModVersion {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(major, minor, patch, preReleaseCode, buildMetadata);
+		int result = major;
+		result = 31 * result + minor;
+		result = 31 * result + patch;
+		result = 31 * result + Objects.hashCode(preReleaseCode);
+		result = 31 * result + Objects.hashCode(buildMetadata);
+		return result;
 	}
 
 	@Override
@@ -0,0 +1,53 @@
+package brownshome.modding.util;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses semantic versions so that equal versions share one instance. This saves memory when the same versions are read
+ * many times, such as when reading an index of many mods. The interned versions are held until the interner is no
+ * longer used. This class is thread-safe.
+ */
+public final class SemanticVersionInterner {
+	private final Map<SemanticModVersion, SemanticModVersion> versions = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates an interner that holds no versions
+	 */
+	public SemanticVersionInterner() { }
+
+	/**
+	 * Returns the shared instance of a version, which is the version itself if no equal version has been interned.
+	 */
+	public SemanticModVersion intern(SemanticModVersion version) {
+		var existing = versions.putIfAbsent(version, version);
+		return existing == null ? version : existing;
+	}
+
+	/**
+	 * @see SemanticModVersion#parse(CharSequence)
+	 */
+	public SemanticModVersion parse(CharSequence text) {
+		return intern(SemanticModVersion.parse(text));
+	}
+
+	/**
+	 * @see SemanticModVersion#parse(CharSequence, int, int)
+	 */
+	public SemanticModVersion parse(CharSequence text, int start, int end) {
+		return intern(SemanticModVersion.parse(text, start, end));
+	}
+
+	/**
+	 * @see SemanticModVersion#parse(ByteBuffer, int, int)
+	 */
+	public SemanticModVersion parse(ByteBuffer buffer, int start, int end) {
+		return intern(SemanticModVersion.parse(buffer, start, end));
+	}
+
+	/** The number of distinct versions that have been interned */
+	public int size() {
+		return versions.size();
+	}
+}
@@ -0,0 +1,370 @@
+package brownshome.modding.util;
+
+import brownshome.modding.ModVersion;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * A set of semantic versions, made of a union of intervals with some single versions excluded. A range may also be
+ * limited to release versions, in which case it contains no pre-release versions.
+ * <br>
+ * Versions are compared using {@link ModVersion#compareTo}, so build metadata is ignored. Ranges only contain
+ * {@link SemanticModVersion}s.
+ */
+public final class VersionRange {
+	/** An interval between two versions. A null bound is unbounded. */
+	private static final class Interval {
+		final SemanticModVersion lower, upper;
+		final boolean lowerInclusive, upperInclusive;
+
+		Interval(SemanticModVersion lower, boolean lowerInclusive, SemanticModVersion upper, boolean upperInclusive) {
+			this.lower = lower;
+			this.lowerInclusive = lowerInclusive;
+			this.upper = upper;
+			this.upperInclusive = upperInclusive;
+		}
+
+		boolean isAboveLower(ModVersion version) {
+			if (lower == null) {
+				return true;
+			}
+
+			int compare = version.compareTo(lower);
+			return compare > 0 || compare == 0 && lowerInclusive;
+		}
+
+		boolean isBelowUpper(ModVersion version) {
+			if (upper == null) {
+				return true;
+			}
+
+			int compare = version.compareTo(upper);
+			return compare < 0 || compare == 0 && upperInclusive;
+		}
+
+		boolean contains(ModVersion version) {
+			return isAboveLower(version) && isBelowUpper(version);
+		}
+
+		/**
+		 * Returns the intersection of the intervals, or null if it is empty
+		 */
+		Interval intersect(Interval other) {
+			SemanticModVersion lower, upper;
+			boolean lowerInclusive, upperInclusive;
+
+			int compareLower = this.lower == null ? -1 : other.lower == null ? 1 : this.lower.compareTo(other.lower);
+
+			if (compareLower == 0) {
+				lower = this.lower;
+				lowerInclusive = this.lowerInclusive && other.lowerInclusive;
+			} else if (compareLower > 0) {
+				lower = this.lower;
+				lowerInclusive = this.lowerInclusive;
+			} else {
+				lower = other.lower;
+				lowerInclusive = other.lowerInclusive;
+			}
+
+			int compareUpper = this.upper == null ? 1 : other.upper == null ? -1 : this.upper.compareTo(other.upper);
+
+			if (compareUpper == 0) {
+				upper = this.upper;
+				upperInclusive = this.upperInclusive && other.upperInclusive;
+			} else if (compareUpper < 0) {
+				upper = this.upper;
+				upperInclusive = this.upperInclusive;
+			} else {
+				upper = other.upper;
+				upperInclusive = other.upperInclusive;
+			}
+
+			if (lower != null && upper != null) {
+				int compare = lower.compareTo(upper);
+
+				if (compare > 0 || compare == 0 && !(lowerInclusive && upperInclusive)) {
+					return null;
+				}
+			}
+
+			return new Interval(lower, lowerInclusive, upper, upperInclusive);
+		}
+
+		/**
+		 * Returns true if this interval ends before, or at the same point as, the other interval
+		 */
+		boolean endsBefore(Interval other) {
+			if (upper == null) {
+				return false;
+			}
+
+			if (other.upper == null) {
+				return true;
+			}
+
+			int compare = upper.compareTo(other.upper);
+			return compare < 0 || compare == 0 && (!upperInclusive || other.upperInclusive);
+		}
+
+		@Override
+		public String toString() {
+			return (lowerInclusive ? "[" : "(") + (lower == null ? "" : lower) + ", " + (upper == null ? "" : upper) + (upperInclusive ? "]" : ")");
+		}
+	}
+
+	public static final VersionRange ANY = new VersionRange(List.of(new Interval(null, false, null, false)), List.of(), true);
+	public static final VersionRange NONE = new VersionRange(List.of(), List.of(), true);
+
+	/** Sorted, non-overlapping intervals */
+	private final List<Interval> intervals;
+	private final List<SemanticModVersion> exclusions;
+	private final boolean preReleases;
+
+	private VersionRange(List<Interval> intervals, List<SemanticModVersion> exclusions, boolean preReleases) {
+		this.intervals = intervals;
+		this.exclusions = exclusions;
+		this.preReleases = preReleases;
+	}
+
+	private static VersionRange interval(SemanticModVersion lower, boolean lowerInclusive, SemanticModVersion upper, boolean upperInclusive) {
+		return new VersionRange(List.of(new Interval(lower, lowerInclusive, upper, upperInclusive)), List.of(), true);
+	}
+
+	/** Versions that are newer than or match the version */
+	public static VersionRange atLeast(SemanticModVersion version) {
+		return interval(version, true, null, false);
+	}
+
+	/** Versions that are newer than the version */
+	public static VersionRange above(SemanticModVersion version) {
+		return interval(version, false, null, false);
+	}
+
+	/** Versions that are older than or match the version */
+	public static VersionRange atMost(SemanticModVersion version) {
+		return interval(null, false, version, true);
+	}
+
+	/** Versions that are older than the version */
+	public static VersionRange below(SemanticModVersion version) {
+		return interval(null, false, version, false);
+	}
+
+	/** Versions that match the version, ignoring build metadata */
+	public static VersionRange exactly(SemanticModVersion version) {
+		return interval(version, true, version, true);
+	}
+
+	/** Versions that match or are newer than the lower bound, and are older than the upper bound */
+	public static VersionRange between(SemanticModVersion lowerInclusive, SemanticModVersion upperExclusive) {
+		var result = interval(lowerInclusive, true, upperExclusive, false);
+		return result.isEmpty() ? NONE : result;
+	}
+
+	/** Every version except those that match the version */
+	public static VersionRange except(SemanticModVersion version) {
+		return new VersionRange(ANY.intervals, List.of(version), true);
+	}
+
+	/**
+	 * Returns a range containing the release versions in this range
+	 */
+	public VersionRange releasesOnly() {
+		return preReleases ? new VersionRange(intervals, exclusions, false) : this;
+	}
+
+	/**
+	 * Returns a range containing the versions that are in both ranges
+	 */
+	public VersionRange intersect(VersionRange other) {
+		var result = new ArrayList<Interval>();
+
+		// Both lists are sorted, so each interval can only overlap the intervals next to it in the other list
+		int i = 0, j = 0;
+		while (i < intervals.size() && j < other.intervals.size()) {
+			var a = intervals.get(i);
+			var b = other.intervals.get(j);
+			var overlap = a.intersect(b);
+
+			if (overlap != null) {
+				result.add(overlap);
+			}
+
+			// Advance the interval that ends first
+			if (a.endsBefore(b)) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+
+		List<SemanticModVersion> combinedExclusions;
+
+		if (other.exclusions.isEmpty()) {
+			combinedExclusions = exclusions;
+		} else if (exclusions.isEmpty()) {
+			combinedExclusions = other.exclusions;
+		} else {
+			combinedExclusions = new ArrayList<>(exclusions);
+			combinedExclusions.addAll(other.exclusions);
+		}
+
+		return new VersionRange(Collections.unmodifiableList(result), combinedExclusions, preReleases && other.preReleases);
+	}
+
+	/**
+	 * Returns true if no version is in this range. An open interval between two pre-release versions that have no
+	 * version between them is not detected, and is treated as not empty.
+	 */
+	public boolean isEmpty() {
+		for (var interval : intervals) {
+			if (!isIntervalEmpty(interval)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean isIntervalEmpty(Interval interval) {
+		var lower = interval.lower;
+		var lowerInclusive = interval.lowerInclusive;
+
+		if (!preReleases && lower != null) {
+			// Move the lower bound to the first release version in the interval
+			if (lower.preReleaseCode() != null) {
+				lower = new SemanticModVersion(lower.major(), lower.minor(), lower.patch());
+				lowerInclusive = true;
+			} else if (!lowerInclusive) {
+				lower = new SemanticModVersion(lower.major(), lower.minor(), lower.patch() + 1);
+				lowerInclusive = true;
+			}
+
+			if (!interval.isBelowUpper(lower)) {
+				return true;
+			}
+		}
+
+		if (lower == null || interval.upper == null || lower.compareTo(interval.upper) != 0) {
+			// There is more than one version in the interval, and only single versions are excluded
+			return false;
+		}
+
+		// The interval contains a single version
+		return !lowerInclusive || !interval.upperInclusive || !contains(lower);
+	}
+
+	/**
+	 * Returns true if the version is in this range
+	 */
+	public boolean contains(ModVersion version) {
+		if (!(version instanceof SemanticModVersion)) {
+			return false;
+		}
+
+		if (!preReleases && ((SemanticModVersion) version).preReleaseCode() != null) {
+			return false;
+		}
+
+		for (var exclusion : exclusions) {
+			if (version.compareTo(exclusion) == 0) {
+				return false;
+			}
+		}
+
+		for (var interval : intervals) {
+			if (interval.contains(version)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Finds the versions in this range from a list of versions sorted highest first. Each interval is found with a
+	 * binary search, so the versions outside of the range are never compared.
+	 *
+	 * @param versions the versions to search, sorted highest first
+	 * @return the set of indices of the versions that are in this range
+	 */
+	public BitSet matching(List<? extends ModVersion> versions) {
+		var result = new BitSet(versions.size());
+		boolean checkEach = !preReleases || !exclusions.isEmpty();
+
+		for (var interval : intervals) {
+			int from = firstBelowUpper(versions, interval);
+			int to = firstBelowLower(versions, interval, from);
+
+			if (!checkEach) {
+				result.set(from, to);
+				continue;
+			}
+
+			for (int i = from; i < to; i++) {
+				if (contains(versions.get(i))) {
+					result.set(i);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private static int firstBelowUpper(List<? extends ModVersion> versions, Interval interval) {
+		int low = 0, high = versions.size();
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (interval.isBelowUpper(versions.get(middle))) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+
+		return low;
+	}
+
+	private static int firstBelowLower(List<? extends ModVersion> versions, Interval interval, int from) {
+		int low = from, high = versions.size();
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (interval.isAboveLower(versions.get(middle))) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	@Override
+	public String toString() {
+		var builder = new StringJoiner(" | ");
+
+		for (var interval : intervals) {
+			builder.add(interval.toString());
+		}
+
+		var result = builder.length() == 0 ? "{}" : builder.toString();
+
+		if (!exclusions.isEmpty()) {
+			result += " except " + exclusions;
+		}
+
+		if (!preReleases) {
+			result += " releases only";
+		}
+
+		return result;
+	}
+}
@@ -8,6 +8,7 @@ module brownshome.modding {
 	uses Mod;
 
 	exports brownshome.modding;
+	exports brownshome.modding.dependencygraph;
 	exports brownshome.modding.util;
 	exports brownshome.modding.modsource;
 }
@@ -1,29 +1,480 @@
 package brownshome.modding;
 
+import brownshome.modding.dependencygraph.SelectionStrategy;
 import brownshome.modding.util.*;
 
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ModLoaderTest {
 
+	private static final List<ModDependency> REQUIREMENTS = List.of(
+			new RuleModDependency("baseMod", SemanticModVersion.createVersion("1.0.0"), DependencyRules.NEWER_OR_EQUAL)
+	);
+
 	@Test
 	void loadMods() throws ModLoadingException, IOException {
 		TestMod.clearStageRecord();
 
-		List<ModDependency> requirements = List.of(
-				new RuleModDependency("baseMod", SemanticModVersion.createVersion("1.0.0"), DependencyRules.NEWER_OR_EQUAL)
-		);
-
 		ModLoader loader = new ModLoader(TestModSource.newModSource());
 
-		loader.loadMods(requirements);
+		loader.loadMods(REQUIREMENTS);
+
+		assertStageOrder();
+	}
+
+	@Test
+	void loadModsInParallel() throws ModLoadingException, IOException {
+		TestMod.clearStageRecord();
+
+		var pool = Executors.newFixedThreadPool(4);
+
+		try {
+			ModLoader loader = new ModLoader(TestModSource.newModSource()).stageExecutor(pool);
+
+			loader.loadMods(REQUIREMENTS);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertStageOrder();
+	}
+
+	@Test
+	void loaderThreadStagesRunOnLoaderThread() throws ModLoadingException {
+		var loaderThread = Thread.currentThread();
+		var pinnedThreads = Collections.synchronizedSet(new HashSet<Thread>());
+		var otherThreads = Collections.synchronizedSet(new HashSet<Thread>());
+
+		var source = new ScriptedModSource();
+
+		for (int i = 0; i < 5; i++) {
+			source.mod("mod" + i, mod -> List.of(
+					mod.createLoadingStageRequest("pinned", () -> pinnedThreads.add(Thread.currentThread())).onLoaderThread(),
+					mod.createLoadingStageRequest("pooled", () -> otherThreads.add(Thread.currentThread()))));
+		}
+
+		var pool = Executors.newFixedThreadPool(4);
+
+		try {
+			new ModLoader(source).stageExecutor(pool).loadMods(source.requirements());
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(Set.of(loaderThread), pinnedThreads);
+		assertFalse(otherThreads.contains(loaderThread));
+	}
+
+	@Test
+	void loaderThreadStageDoesNotHoldBackPooledStages() {
+		var pooledStarted = new CountDownLatch(1);
+		var source = new ScriptedModSource();
+
+		source.mod("pinnedMod", mod -> {
+			// The chain gives the pinned stage a higher priority than the pooled stage
+			var pinned = mod.createLoadingStageRequest("pinned", () -> {
+				assertTrue(pooledStarted.await(10, TimeUnit.SECONDS), "The pooled stage was not started");
+				return null;
+			}).onLoaderThread();
+
+			var next = mod.stage("next").after(pinned);
+
+			return List.of(pinned, next, mod.stage("last").after(next), mod.createLoadingStageRequest("pooled", pooledStarted::countDown));
+		});
+
+		var pool = Executors.newFixedThreadPool(2);
+
+		try {
+			assertTimeoutPreemptively(Duration.ofSeconds(20), () -> new ModLoader(source).stageExecutor(pool).loadMods(source.requirements()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void loadModsOnVirtualThreads() throws ModLoadingException, IOException {
+		TestMod.clearStageRecord();
+
+		ModLoader loader = new ModLoader(TestModSource.newModSource()).virtualThreadStages(2);
+
+		loader.loadMods(REQUIREMENTS);
+
+		assertStageOrder();
+	}
+
+	@Test
+	void blockingStageExecutorRejectsNull() throws IOException {
+		var loader = new ModLoader(TestModSource.newModSource());
+
+		assertThrows(NullPointerException.class, () -> loader.blockingStageExecutor(null, 1));
+	}
+
+	@Test
+	void loadModsWithStageProfile() throws ModLoadingException, IOException {
+		var profile = Files.createTempFile("stage-profile", ".txt");
+
+		try {
+			for (int run = 0; run < 2; run++) {
+				TestMod.clearStageRecord();
+
+				new ModLoader(TestModSource.newModSource()).stageProfile(profile).loadMods(REQUIREMENTS);
+
+				assertStageOrder();
+			}
+
+			assertTrue(Files.readAllLines(profile).stream().anyMatch(line -> line.startsWith("baseMod\t")));
+		} finally {
+			Files.delete(profile);
+		}
+	}
+
+	@Test
+	void loadModsWithLockFile() throws ModLoadingException, IOException {
+		var lockFile = Files.createTempFile("mods", ".lock");
+		Files.delete(lockFile);
+
+		try {
+			for (int run = 0; run < 2; run++) {
+				TestMod.clearStageRecord();
+
+				new ModLoader(TestModSource.newModSource()).lockFile(lockFile).loadMods(REQUIREMENTS);
+
+				assertStageOrder();
+			}
+
+			var lines = Files.readAllLines(lockFile);
+
+			assertTrue(lines.get(0).startsWith("requirements\t"));
+			assertTrue(lines.stream().anyMatch(line -> line.startsWith("baseMod\t")));
+
+			// A lock file naming a version that does not exist is replaced
+			lines.set(1, lines.get(1).replaceFirst("\t[^\t]*\t", "\t99.0.0\t"));
+			Files.write(lockFile, lines);
+
+			TestMod.clearStageRecord();
+			new ModLoader(TestModSource.newModSource()).lockFile(lockFile).loadMods(REQUIREMENTS);
+			assertStageOrder();
+
+			assertFalse(Files.readAllLines(lockFile).get(1).contains("99.0.0"));
+
+			// A lock file written by another strategy is replaced
+			new ModLoader(TestModSource.newModSource()).selectionStrategy(SelectionStrategy.CONFLICT_DRIVEN).lockFile(lockFile).loadMods(REQUIREMENTS);
+			assertTrue(Files.readAllLines(lockFile).get(0).endsWith("\tCONFLICT_DRIVEN"));
+		} finally {
+			Files.deleteIfExists(lockFile);
+		}
+	}
+
+	@Test
+	void loadLongChainWithoutRecursion() throws ModLoadingException {
+		int chainLength = 200_000;
+
+		var source = new ScriptedModSource().mod("chainMod", mod -> {
+			var chain = new ArrayList<LoadingStage>(chainLength);
+
+			for (int i = 0; i < chainLength; i++) {
+				chain.add(mod.stage("link" + i));
+			}
+
+			return mod.fixExecutionOrder(chain);
+		});
+
+		new ModLoader(source).loadMods(source.requirements());
+
+		var log = source.log();
+		assertEquals(chainLength, log.size());
+
+		for (int i = 0; i < chainLength; i++) {
+			assertEquals("link" + i, log.get(i).stage);
+		}
+	}
+
+	@Test
+	void stageErrorsAreNotWrapped() throws IOException {
+		var source = new ScriptedModSource().mod("failingMod", mod -> List.of(
+				mod.createLoadingStageRequest("fail", () -> {
+					throw new TestError();
+				})));
+
+		assertThrows(TestError.class, () -> new ModLoader(source).loadMods(source.requirements()));
+
+		var pool = Executors.newFixedThreadPool(2);
+
+		try {
+			assertThrows(TestError.class, () -> new ModLoader(source).stageExecutor(pool).loadMods(source.requirements()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void stagesInFlightAreLimited() throws ModLoadingException {
+		var running = new AtomicInteger();
+		var maxRunning = new AtomicInteger();
+
+		var source = new ScriptedModSource();
+
+		for (int i = 0; i < 10; i++) {
+			source.mod("mod" + i, mod -> {
+				var stages = new ArrayList<LoadingStage>();
+
+				for (int j = 0; j < 10; j++) {
+					stages.add(mod.createLoadingStageRequest("work" + j, () -> {
+						maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+						Thread.sleep(1);
+						running.decrementAndGet();
+						return null;
+					}));
+				}
+
+				return stages;
+			});
+		}
+
+		var pool = Executors.newFixedThreadPool(8);
+
+		try {
+			new ModLoader(source).stageExecutor(pool, 2).loadMods(source.requirements());
+		} finally {
+			pool.shutdown();
+		}
+
+		assertTrue(maxRunning.get() <= 2, () -> maxRunning.get() + " stages ran at once");
+	}
+
+	@Test
+	void stageProfileOrdersPooledStages() throws ModLoadingException, IOException {
+		var profile = Files.createTempFile("stage-profile", ".txt");
+
+		try {
+			// The long stage becomes ready after the others, but starts first as it is on the critical path
+			assertEquals(List.of("first", "long", "other1", "other2"), runWithProfile(profile, 1_000_000, 100));
+
+			assertEquals(List.of("other1", "other2", "first", "long"), runWithProfile(profile, 10, 100));
+		} finally {
+			Files.delete(profile);
+		}
+	}
+
+	/**
+	 * Loads a mod on a single thread with the recorded durations. The mod has a stage named long that runs after a
+	 * short stage named first, and two independent stages, other1 and other2.
+	 *
+	 * @return the order that the stages ran in
+	 */
+	private static List<String> runWithProfile(Path profile, long longDuration, long otherDuration) throws ModLoadingException, IOException {
+		Files.write(profile, List.of(
+				"profiledMod\t1.0.0\tfirst\t10",
+				"profiledMod\t1.0.0\tlong\t" + longDuration,
+				"profiledMod\t1.0.0\tother1\t" + otherDuration,
+				"profiledMod\t1.0.0\tother2\t" + otherDuration));
+
+		var source = new ScriptedModSource();
+
+		source.mod("profiledMod", mod -> {
+			// The other ready stages are queued while this stage holds the only thread
+			var first = mod.createLoadingStageRequest("first", () -> {
+				Thread.sleep(50);
+				source.log().add(new ModStage("profiledMod", "first"));
+				return null;
+			});
+
+			return List.of(first, mod.stage("long").after(first), mod.stage("other1"), mod.stage("other2"));
+		});
+
+		var pool = Executors.newSingleThreadExecutor();
+
+		try {
+			new ModLoader(source).stageExecutor(pool).stageProfile(profile).loadMods(source.requirements());
+		} finally {
+			pool.shutdown();
+		}
+
+		return source.log().stream().map(stage -> stage.stage).collect(Collectors.toList());
+	}
+
+	@Test
+	void asyncStageReleasesDependentsOnCompletion() throws ModLoadingException {
+		var source = new ScriptedModSource();
+
+		source.mod("asyncMod", mod -> {
+			var async = mod.createAsyncLoadingStageRequest("async", () -> CompletableFuture.runAsync(() -> {
+				sleep(20);
+				source.log().add(new ModStage("asyncMod", "async"));
+			}));
+
+			return List.of(async, mod.stage("dependent").after(async));
+		});
+
+		new ModLoader(source).loadMods(source.requirements());
+
+		assertEquals(List.of(new ModStage("asyncMod", "async"), new ModStage("asyncMod", "dependent")), source.log());
+	}
+
+	@Test
+	void asyncStageFailsOnExceptionalCompletion() {
+		var failure = new IOException("Unable to read");
+
+		var source = new ScriptedModSource().mod("asyncMod", mod -> List.of(
+				mod.createAsyncLoadingStageRequest("async", () -> CompletableFuture.failedFuture(failure))));
+
+		var exception = assertThrows(ModStageExecutionException.class, () -> new ModLoader(source).loadMods(source.requirements()));
+
+		assertSame(failure, exception.cause());
+		assertEquals(new StringLoadingStage("async"), exception.stageName());
+	}
+
+	@Test
+	void failureWhileAsyncStageIsPending() {
+		var neverCompletes = new CompletableFuture<Void>();
+		var asyncStarted = new CountDownLatch(1);
+		var source = new ScriptedModSource();
+
+		source.mod("asyncMod", mod -> List.of(
+				mod.createAsyncLoadingStageRequest("async", () -> {
+					asyncStarted.countDown();
+					return neverCompletes;
+				}),
+				mod.createLoadingStageRequest("failing", () -> {
+					asyncStarted.await();
+					throw new IOException("Failed");
+				})));
+
+		var pool = Executors.newFixedThreadPool(2);
+
+		try {
+			assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				assertThrows(ModStageExecutionException.class, () -> new ModLoader(source).stageExecutor(pool).loadMods(source.requirements()));
+			});
+		} finally {
+			pool.shutdown();
+		}
+
+		assertTrue(neverCompletes.isCancelled());
+	}
+
+	@Test
+	void stagesInResourceGroupDoNotOverlap() throws ModLoadingException {
+		int modCount = 8;
+		var group = ResourceGroup.exclusive("registry");
+		var running = new AtomicInteger();
+		var maxRunning = new AtomicInteger();
+
+		// Without the group every stage would start before the first had finished waiting on the latch
+		var started = new CountDownLatch(modCount);
+
+		var source = new ScriptedModSource();
+
+		for (int i = 0; i < modCount; i++) {
+			source.mod("mod" + i, mod -> List.of(mod.createLoadingStageRequest("register", () -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				started.countDown();
+				started.await(20, TimeUnit.MILLISECONDS);
+				running.decrementAndGet();
+				return null;
+			}).uses(group)));
+		}
+
+		var pool = Executors.newFixedThreadPool(modCount);
+
+		try {
+			new ModLoader(source).stageExecutor(pool).loadMods(source.requirements());
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(1, maxRunning.get());
+		assertEquals(0, started.getCount());
+	}
+
+	@Test
+	void contributionsAreBatched() throws ModLoadingException {
+		var blocks = new BatchedStageName<>("registerBlocks", String.class);
+		var batches = Collections.synchronizedList(new ArrayList<List<String>>());
+		var source = new ScriptedModSource();
+
+		source.mod("registry", mod -> {
+			mod.handleBatch(blocks, contributions -> batches.add(new ArrayList<>(contributions)));
+
+			return List.of(mod.createLoadingStageRequest("useRegistry", () -> {
+				assertEquals(1, batches.size());
+			}).after(blocks, true));
+		});
+
+		for (int i = 0; i < 5; i++) {
+			var name = "contributor" + i;
+
+			// Every contribution becomes ready at the same time, once every mod has started
+			source.mod(name, mod -> List.of(
+					mod.createContributionRequest(blocks, name + "-a").after(PredefinedLoadingStages.START, true),
+					mod.createContributionRequest(blocks, name + "-b").after(PredefinedLoadingStages.START, true)));
+		}
+
+		new ModLoader(source).loadMods(source.requirements());
+
+		assertEquals(1, batches.size());
+		assertEquals(10, batches.get(0).size());
+		assertTrue(batches.get(0).containsAll(List.of("contributor0-a", "contributor0-b", "contributor4-a", "contributor4-b")));
+	}
+
+	@Test
+	void batchedStageNeedsExactlyOneHandler() {
+		var blocks = new BatchedStageName<>("registerBlocks", String.class);
+
+		var noHandler = new ScriptedModSource()
+				.mod("contributor", mod -> List.of(mod.createContributionRequest(blocks, "block")));
+
+		assertThrows(ModLoadingException.class, () -> new ModLoader(noHandler).loadMods(noHandler.requirements()));
+
+		var twoMods = new ScriptedModSource()
+				.mod("registry1", mod -> {
+					mod.handleBatch(blocks, contributions -> { });
+					return List.of();
+				})
+				.mod("registry2", mod -> {
+					mod.handleBatch(blocks, contributions -> { });
+					return List.of();
+				});
+
+		assertThrows(ModLoadingException.class, () -> new ModLoader(twoMods).loadMods(twoMods.requirements()));
+
+		var twice = new ScriptedModSource()
+				.mod("registry", mod -> {
+					mod.handleBatch(blocks, contributions -> { });
+					mod.handleBatch(blocks, contributions -> { });
+					return List.of();
+				});
+
+		assertThrows(IllegalStateException.class, () -> new ModLoader(twice).loadMods(twice.requirements()));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static final class TestError extends Error {
+		private static final long serialVersionUID = 1L;
+	}
 
+	private void assertStageOrder() {
 		String[][][] isBefore = {
 				{{ "baseMod", "start" }, { "baseMod", "loadImages" }, {"baseMod", "finalizeLoading"}, {"parentMod", "finalizeLoading"}},
 				{{ "baseMod", "start" }, { "parentMod", "start" }, {"parentMod", "loadImages"}, {"baseMod", "finalizeLoading"}},
@@ -0,0 +1,106 @@
+package brownshome.modding;
+
+import brownshome.modding.modsource.ModSource;
+import brownshome.modding.util.AnyMod;
+import brownshome.modding.util.SemanticModVersion;
+import brownshome.modding.util.StringLoadingStage;
+
+import java.util.*;
+
+/**
+ * A mod source whose mods are defined in code, for tests that need a stage graph that is awkward to describe in YAML.
+ * Each mod has a single version and no dependencies, and creates the stages returned by its script.
+ */
+class ScriptedModSource extends ModSource {
+	@FunctionalInterface
+	interface Script {
+		Collection<LoadingStage> configure(ScriptedMod mod);
+	}
+
+	final class ScriptedMod extends Mod {
+		private final Script script;
+
+		ScriptedMod(ModInfo info, Script script) {
+			super(info);
+
+			this.script = script;
+		}
+
+		/**
+		 * Creates a stage that records that it ran in the log of the source
+		 */
+		LoadingStage stage(String name) {
+			return createLoadingStageRequest(new StringLoadingStage(name), () -> {
+				log.add(new ModStage(info().name(), name));
+			});
+		}
+
+		@Override
+		protected Collection<LoadingStage> configureLoadingProcess() {
+			return script.configure(this);
+		}
+	}
+
+	private final Map<String, Script> scripts = new LinkedHashMap<>();
+	private final List<ModStage> log = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * Adds a mod to this source
+	 */
+	ScriptedModSource mod(String name, Script script) {
+		scripts.put(name, script);
+		return this;
+	}
+
+	/**
+	 * Returns a requirement for every mod in this source
+	 */
+	List<ModDependency> requirements() {
+		var result = new ArrayList<ModDependency>();
+
+		for (var name : scripts.keySet()) {
+			result.add(new AnyMod(name));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the stages run by {@link ScriptedMod#stage(String)}, in the order that they were run
+	 */
+	List<ModStage> log() {
+		return log;
+	}
+
+	/**
+	 * Asserts that each of the stages ran, and that they ran in the given order
+	 */
+	void assertRanInOrder(ModStage... stages) {
+		var order = new ArrayList<>(log);
+		order.retainAll(List.of(stages));
+
+		if (!order.equals(List.of(stages))) {
+			throw new AssertionError(String.format("Expected %s to run in order, but the log was %s", List.of(stages), log));
+		}
+	}
+
+	@Override
+	public Collection<ModInfo> availableMods(String modName) {
+		if (!scripts.containsKey(modName)) {
+			return List.of();
+		}
+
+		return List.of(new TestModInfo(modName, SemanticModVersion.createVersion("1.0.0"), List.of()));
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <MOD_CLASS extends Mod> MOD_CLASS loadMod(ModInfo info, List<ModuleLayer> parentLayers) {
+		return (MOD_CLASS) new ScriptedMod(info, scripts.get(info.name()));
+	}
+
+	@Override
+	public ModuleLayer loadLayer(ModInfo modInfo, List<ModuleLayer> parentLayers) {
+		return ModuleLayer.boot();
+	}
+}
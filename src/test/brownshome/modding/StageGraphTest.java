@@ -0,0 +1,132 @@
+package brownshome.modding;
+
+import brownshome.modding.util.StringLoadingStage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageGraphTest {
+	private static final StringLoadingStage LOAD = new StringLoadingStage("load");
+	private static final StringLoadingStage MISSING = new StringLoadingStage("missing");
+	private static final StringLoadingStage REGISTER = new StringLoadingStage("register");
+	private static final StringLoadingStage INIT = new StringLoadingStage("init");
+
+	private static void load(ScriptedModSource source) throws ModLoadingException {
+		new ModLoader(source).loadMods(source.requirements());
+	}
+
+	@Test
+	void orderingAgainstMissingNameIsIgnored() throws ModLoadingException {
+		var source = new ScriptedModSource()
+				.mod("a", mod -> List.of(
+						mod.stage("first").after(MISSING, true),
+						mod.stage("second").before(MISSING, false),
+						mod.stage("third").after(mod, MISSING).after(mod.namedMod("b"), MISSING)))
+				.mod("b", mod -> List.of());
+
+		load(source);
+
+		assertEquals(3, source.log().size());
+	}
+
+	@Test
+	void orderingAgainstDuplicateNameWaitsForEveryStage() throws ModLoadingException {
+		var source = new ScriptedModSource()
+				.mod("a", mod -> List.of(
+						mod.stage("load"),
+						mod.stage("load"),
+						mod.stage("load")))
+				.mod("b", mod -> List.of(
+						mod.stage("afterA").after(mod.namedMod("a"), LOAD),
+						mod.stage("afterAll").after(LOAD, true)));
+
+		load(source);
+
+		var log = source.log();
+		var lastLoad = log.lastIndexOf(new ModStage("a", "load"));
+
+		assertEquals(5, log.size());
+		assertTrue(log.indexOf(new ModStage("b", "afterA")) > lastLoad, log::toString);
+		assertTrue(log.indexOf(new ModStage("b", "afterAll")) > lastLoad, log::toString);
+	}
+
+	@Test
+	void dependencyOnUnknownStageIsIgnored() throws ModLoadingException {
+		var source = new ScriptedModSource()
+				.mod("a", mod -> {
+					// This stage is never returned to the loader, so it is not part of the graph
+					var unknown = mod.stage("unknown");
+
+					return List.of(
+							mod.stage("afterUnknown").after(unknown),
+							mod.stage("beforeUnknown").before(unknown));
+				});
+
+		load(source);
+
+		assertEquals(Set.of(new ModStage("a", "afterUnknown"), new ModStage("a", "beforeUnknown")), Set.copyOf(source.log()));
+	}
+
+	@Test
+	void allModsOrderingWithManyMods() throws ModLoadingException {
+		int modCount = 50;
+		var source = new ScriptedModSource();
+
+		for (int i = 0; i < modCount; i++) {
+			source.mod("mod" + i, mod -> List.of(
+					mod.stage("setup").before(REGISTER, false),
+					mod.stage("register"),
+					mod.stage("init").after(REGISTER, true),
+					mod.stage("finish").after(INIT, false)));
+		}
+
+		var pool = Executors.newFixedThreadPool(4);
+
+		try {
+			new ModLoader(source).stageExecutor(pool).loadMods(source.requirements());
+		} finally {
+			pool.shutdown();
+		}
+
+		var log = source.log();
+		assertEquals(modCount * 4, log.size());
+
+		for (int i = 0; i < modCount; i++) {
+			var mod = "mod" + i;
+
+			for (int j = 0; j < modCount; j++) {
+				var other = "mod" + j;
+
+				// Every init runs after every register
+				assertTrue(log.indexOf(new ModStage(mod, "init")) > log.indexOf(new ModStage(other, "register")));
+
+				if (i != j) {
+					assertTrue(log.indexOf(new ModStage(mod, "setup")) < log.indexOf(new ModStage(other, "register")));
+					assertTrue(log.indexOf(new ModStage(mod, "finish")) > log.indexOf(new ModStage(other, "init")));
+				}
+			}
+		}
+	}
+
+	@Test
+	void deadlockThroughBarriersReportsOnlyModStages() {
+		var source = new ScriptedModSource()
+				.mod("a", mod -> List.of(mod.stage("x").after(new StringLoadingStage("y"), true)))
+				.mod("b", mod -> List.of(mod.stage("y").after(new StringLoadingStage("x"), false)))
+				.mod("c", mod -> List.of(mod.stage("free")));
+
+		var exception = assertThrows(ModDeadlockException.class, () -> load(source));
+		var deadlocked = exception.deadlockedStages();
+
+		assertTrue(deadlocked.stream().noneMatch(LoadingStage::isBarrier), deadlocked::toString);
+		assertTrue(deadlocked.stream().anyMatch(stage -> stage.stageName().equals(new StringLoadingStage("x"))), deadlocked::toString);
+		assertTrue(deadlocked.stream().anyMatch(stage -> stage.stageName().equals(new StringLoadingStage("y"))), deadlocked::toString);
+		assertTrue(deadlocked.stream().noneMatch(stage -> stage.mod().info().name().equals("c")), deadlocked::toString);
+		assertEquals(List.of(new ModStage("c", "free")), source.log());
+	}
+}
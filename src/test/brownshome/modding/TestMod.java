@@ -4,20 +4,26 @@ import brownshome.modding.util.StringLoadingStage;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 class TestMod extends Mod {
-	private static List<ModStage> executedStages = new ArrayList<>();
+	private static List<ModStage> executedStages = newStageRecord();
+
+	private static List<ModStage> newStageRecord() {
+		// Stages may be recorded from several threads at once
+		return Collections.synchronizedList(new ArrayList<>());
+	}
 
 	static void clearStageRecord() {
-		executedStages = new ArrayList<>();
+		executedStages = newStageRecord();
 	}
 
 	static List<ModStage> getStageRecord() {
 		var result = executedStages;
 
-		executedStages = new ArrayList<>();
+		executedStages = newStageRecord();
 
 		return result;
 	}
@@ -34,6 +40,8 @@ class TestMod extends Mod {
 	protected Collection<LoadingStage> configureLoadingProcess() {
 		return loadingStages.stream().map(stage -> {
 			var request = createLoadingStageRequest(new StringLoadingStage(stage.name), () -> {
+				assert currentlyLoadingMod() == this;
+
 				executedStages.add(new ModStage(info().name(), stage.name));
 				return null;
 			});
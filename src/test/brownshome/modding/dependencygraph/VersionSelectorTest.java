@@ -1,14 +1,21 @@
 package brownshome.modding.dependencygraph;
 
 import brownshome.modding.*;
+import brownshome.modding.modsource.ModSource;
 import brownshome.modding.util.*;
 
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,6 +32,392 @@ class VersionSelectorTest {
 		assertTrue(isValid(selector.selectModVersions(), requirements));
 	}
 
+	@Test
+	void selectModVersionsTwice() throws ModLoadingException, IOException {
+		List<ModDependency> requirements = List.of(
+				new RuleModDependency("baseMod", SemanticModVersion.createVersion("1.0.0"), DependencyRules.NEWER_OR_EQUAL)
+		);
+
+		VersionSelector selector = new VersionSelector(TestModSource.newModSource(), requirements);
+
+		assertEquals(selector.selectModVersions(), selector.selectModVersions());
+	}
+
+	@Test
+	void selectModVersionsConflictDriven() throws ModLoadingException, IOException {
+		List<ModDependency> requirements = List.of(
+				new RuleModDependency("baseMod", SemanticModVersion.createVersion("1.0.0"), DependencyRules.NEWER_OR_EQUAL)
+		);
+
+		var backtracking = new VersionSelector(TestModSource.newModSource(), requirements).selectModVersions();
+		var conflictDriven = new VersionSelector(TestModSource.newModSource(), requirements)
+				.strategy(SelectionStrategy.CONFLICT_DRIVEN)
+				.selectModVersions();
+
+		assertTrue(isValid(conflictDriven, requirements));
+		assertEquals(backtracking, conflictDriven);
+	}
+
+	@Test
+	void selectModVersionsPortfolio() throws ModLoadingException, IOException {
+		List<ModDependency> requirements = List.of(
+				new RuleModDependency("baseMod", SemanticModVersion.createVersion("1.0.0"), DependencyRules.NEWER_OR_EQUAL)
+		);
+
+		var conflictDriven = new VersionSelector(TestModSource.newModSource(), requirements)
+				.strategy(SelectionStrategy.CONFLICT_DRIVEN)
+				.selectModVersions();
+
+		var portfolio = new VersionSelector(TestModSource.newModSource(), requirements)
+				.strategy(SelectionStrategy.PORTFOLIO)
+				.selectModVersions();
+
+		assertEquals(conflictDriven, portfolio);
+	}
+
+	@Test
+	void selectModVersionsMinimal() throws ModLoadingException, IOException {
+		List<ModDependency> requirements = List.of(
+				new RuleModDependency("parentMod", SemanticModVersion.createVersion("1.0.0"), DependencyRules.COMPATIBLE)
+		);
+
+		var selection = new VersionSelector(TestModSource.newModSource(), requirements)
+				.strategy(SelectionStrategy.MINIMAL)
+				.selectModVersions();
+
+		assertTrue(isValid(selection, requirements));
+		assertEquals(SemanticModVersion.createVersion("1.0.0"), selection.get("parentMod").version());
+		assertEquals(SemanticModVersion.createVersion("2.5.13"), selection.get("libraryMod").version());
+	}
+
+	@Test
+	void selectModVersionsMinimalRejectsUpperBounds() throws IOException {
+		List<ModDependency> requirements = List.of(
+				new RuleModDependency("parentMod", SemanticModVersion.createVersion("2.0.0"), DependencyRules.OLDER)
+		);
+
+		var selector = new VersionSelector(TestModSource.newModSource(), requirements).strategy(SelectionStrategy.MINIMAL);
+
+		assertThrows(ModLoadingException.class, selector::selectModVersions);
+	}
+
+	@Test
+	void selectModVersionsBatch() throws ModLoadingException, IOException {
+		List<ModDependency> valid = List.of(
+				new RuleModDependency("baseMod", SemanticModVersion.createVersion("1.0.0"), DependencyRules.NEWER_OR_EQUAL)
+		);
+
+		List<ModDependency> invalid = List.of(
+				new RuleModDependency("baseMod", SemanticModVersion.createVersion("3.0.0"), DependencyRules.NEWER_OR_EQUAL)
+		);
+
+		var source = TestModSource.newModSource();
+		var results = new BatchVersionSelector(source).selectAll(List.of(valid, invalid, valid));
+
+		var expected = new VersionSelector(source, valid).strategy(SelectionStrategy.CONFLICT_DRIVEN).selectModVersions();
+		assertEquals(expected, results.get(0).join());
+		assertEquals(expected, results.get(2).join());
+
+		var failure = assertThrows(CompletionException.class, results.get(1)::join);
+		assertTrue(failure.getCause() instanceof ModLoadingException);
+	}
+
+	@Test
+	void selectModVersionsBatchCompletesOnError() {
+		var error = new Error("Thrown by the mod source");
+		var source = new GraphModSource() {
+			@Override
+			public Collection<ModInfo> availableMods(String modName) {
+				throw error;
+			}
+		};
+
+		List<ModDependency> requirements = List.of(new AnyMod("baseMod"));
+		var result = new BatchVersionSelector(source, Runnable::run).select(requirements);
+
+		var failure = assertThrows(CompletionException.class, result::join);
+		assertSame(error, failure.getCause());
+	}
+
+	@Test
+	void selectModVersionsBatchRejectsPortfolio() {
+		var selector = new BatchVersionSelector(new GraphModSource());
+
+		assertThrows(IllegalArgumentException.class, () -> selector.strategy(SelectionStrategy.PORTFOLIO));
+	}
+
+	@Test
+	void reselect() throws ModLoadingException, IOException {
+		List<ModDependency> requirements = List.of(
+				new RuleModDependency("baseMod", SemanticModVersion.createVersion("1.0.0"), DependencyRules.NEWER_OR_EQUAL)
+		);
+
+		var selector = new VersionSelector(TestModSource.newModSource(), requirements);
+		var previous = selector.selectModVersions();
+
+		var unchanged = selector.reselect(previous, new ModDelta());
+		assertEquals(previous, unchanged.selection());
+		assertTrue(unchanged.changedMods().isEmpty());
+
+		var update = selector.reselect(previous, new ModDelta().removeMod(previous.get("libraryMod")));
+		assertTrue(isValid(update.selection(), requirements));
+		assertEquals(Set.of("libraryMod"), update.changedMods());
+
+		assertThrows(ModLoadingException.class, () -> selector.reselect(previous, new ModDelta().removeMod(previous.get("baseMod"))));
+	}
+
+	@Test
+	void reselectOnlyReadsAffectedMods() throws ModLoadingException {
+		var read = new HashSet<String>();
+		var source = countingModSource(read)
+				.mod("app", "1.0.0", requires("lib", "1.0.0"), requires("other", "1.0.0"))
+				.mod("lib", "1.0.0", requires("util", "1.0.0"))
+				.mod("util", "1.1.0")
+				.mod("util", "1.0.0")
+				.mod("other", "1.0.0");
+
+		var selector = new VersionSelector(source, List.of(new AnyMod("app"))).strategy(SelectionStrategy.CONFLICT_DRIVEN);
+		var previous = selector.selectModVersions();
+		read.clear();
+
+		var update = selector.reselect(previous, new ModDelta().removeMod(previous.get("util")));
+		assertEquals(SemanticModVersion.createVersion("1.0.0"), update.selection().get("util").version());
+		assertEquals(Set.of("util"), update.changedMods());
+		assertEquals(Set.of("util"), read);
+		read.clear();
+
+		var extra = info("extra", "1.0.0", requires("other", "1.0.0"));
+		update = selector.reselect(previous, new ModDelta().addMod(extra).addRequirement(new AnyMod("extra")));
+		assertEquals(extra, update.selection().get("extra"));
+		assertEquals(Set.of("extra"), update.changedMods());
+		assertEquals(Set.of("extra"), read);
+	}
+
+	/**
+	 * The only version of util that is left cannot be used by the selected version of lib, so lib must be solved again
+	 * as well, but app is never read
+	 */
+	@Test
+	void reselectWidensToDependentMods() throws ModLoadingException {
+		var read = new HashSet<String>();
+		var source = countingModSource(read)
+				.mod("app", "1.0.0", dependency("lib", "1.0.0", DependencyRules.NEWER_OR_EQUAL))
+				.mod("lib", "1.0.0", requires("util", "1.0.0"))
+				.mod("util", "1.0.0");
+
+		var selector = new VersionSelector(source, List.of(new AnyMod("app"))).strategy(SelectionStrategy.CONFLICT_DRIVEN);
+		var previous = selector.selectModVersions();
+		read.clear();
+
+		var delta = new ModDelta()
+				.addMod(info("lib", "2.0.0", requires("util", "2.0.0")))
+				.addMod(info("util", "2.0.0"))
+				.removeMod(previous.get("util"));
+
+		var update = selector.reselect(previous, delta);
+		assertTrue(isValid(update.selection(), List.of(new AnyMod("app"))));
+		assertEquals(SemanticModVersion.createVersion("2.0.0"), update.selection().get("lib").version());
+		assertEquals(Set.of("lib", "util"), update.changedMods());
+		assertEquals(Set.of("lib", "util"), read);
+	}
+
+	@Test
+	void reselectUsesStrategy() throws ModLoadingException {
+		var source = new GraphModSource()
+				.mod("app", "1.0.0", requires("util", "1.0.0"))
+				.mod("util", "1.2.0")
+				.mod("util", "1.1.0")
+				.mod("util", "1.0.0");
+
+		List<ModDependency> requirements = List.of(new AnyMod("app"));
+
+		var minimal = new VersionSelector(source, requirements).strategy(SelectionStrategy.MINIMAL);
+		var previous = minimal.selectModVersions();
+		var delta = new ModDelta().removeMod(previous.get("util"));
+
+		assertEquals(SemanticModVersion.createVersion("1.1.0"), minimal.reselect(previous, delta).selection().get("util").version());
+
+		var conflictDriven = new VersionSelector(source, requirements).strategy(SelectionStrategy.CONFLICT_DRIVEN);
+		assertEquals(SemanticModVersion.createVersion("1.2.0"), conflictDriven.reselect(previous, delta).selection().get("util").version());
+	}
+
+	/**
+	 * app 2.0.0 needs lib 2.x, which conflicts with its own need for util 1.x, so lib and then app must be relaxed. The
+	 * mod that only app 2.0.0 needed must then be dropped.
+	 */
+	@Test
+	void selectModVersionsRelaxes() throws ModLoadingException {
+		var source = relaxingModSource();
+		List<ModDependency> requirements = List.of(new AnyMod("app"));
+
+		for (var strategy : List.of(SelectionStrategy.BACKTRACKING, SelectionStrategy.CONFLICT_DRIVEN)) {
+			var selection = new VersionSelector(source, requirements).strategy(strategy).selectModVersions();
+
+			assertTrue(isValid(selection, requirements), strategy.toString());
+			assertEquals(Set.of("app", "lib", "util"), selection.keySet(), strategy.toString());
+			assertEquals(SemanticModVersion.createVersion("1.0.0"), selection.get("app").version(), strategy.toString());
+			assertEquals(SemanticModVersion.createVersion("1.0.0"), selection.get("lib").version(), strategy.toString());
+		}
+	}
+
+	/**
+	 * There is no version of util, so app 2.0.0 is relaxed while lib is waiting to be relaxed in turn. Nothing needs lib
+	 * once app is relaxed, so lib must be dropped.
+	 */
+	@Test
+	void selectModVersionsDropsModsThatAreNoLongerNeeded() throws ModLoadingException {
+		var source = new GraphModSource()
+				.mod("app", "2.0.0", exactly("lib", "1.0.0"), requires("util", "1.3.0"))
+				.mod("app", "1.0.0")
+				.mod("lib", "1.0.0", exactly("util", "1.2.0"));
+
+		List<ModDependency> requirements = List.of(new AnyMod("app"));
+
+		for (var strategy : List.of(SelectionStrategy.BACKTRACKING, SelectionStrategy.CONFLICT_DRIVEN)) {
+			var selection = new VersionSelector(source, requirements).strategy(strategy).selectModVersions();
+
+			assertEquals(Set.of("app"), selection.keySet(), strategy.toString());
+			assertEquals(SemanticModVersion.createVersion("1.0.0"), selection.get("app").version(), strategy.toString());
+		}
+	}
+
+	/**
+	 * The backtracking search chooses util before lib on this graph, and keeps a lower version of util than the
+	 * conflict-driven search, so the portfolio must use the conflict-driven selection even if the backtracking search
+	 * finishes first.
+	 */
+	@Test
+	void selectModVersionsPortfolioIsDeterministic() throws ModLoadingException {
+		var source = relaxingModSource();
+		List<ModDependency> requirements = List.of(new AnyMod("app"));
+
+		var expected = new VersionSelector(source, requirements).strategy(SelectionStrategy.CONFLICT_DRIVEN).selectModVersions();
+
+		// Runs the backtracking search to the end before the conflict-driven search starts, or never runs it
+		assertEquals(expected, new PortfolioSolver(source, requirements, Runnable::run).solve());
+		assertEquals(expected, new PortfolioSolver(source, requirements, task -> { }).solve());
+	}
+
+	/**
+	 * A reduced form of the benchmark catalog {@code SyntheticCatalog.random(5, 3, 2, 0.5)}. The backtracking search
+	 * does not find a selection, as it does not search the versions of m3 again once m0 is relaxed, but there is one.
+	 */
+	@Test
+	void selectModVersionsPortfolioIgnoresBacktrackingFailure() throws ModLoadingException {
+		var source = new GraphModSource()
+				.mod("m0", "1.2.0", exactly("m2", "1.2.0"))
+				.mod("m0", "1.0.0", dependency("m1", "1.0.0", DependencyRules.NEWER_OR_EQUAL))
+				.mod("m1", "1.1.0", dependency("m3", "1.1.0", DependencyRules.NEWER_OR_EQUAL))
+				.mod("m2", "1.2.0", exactly("m3", "1.0.0"))
+				.mod("m3", "1.2.0")
+				.mod("m3", "1.0.0", dependency("m4", "1.2.0", DependencyRules.EXCLUDE));
+
+		List<ModDependency> requirements = List.of(new AnyMod("m0"));
+
+		assertThrows(ModLoadingException.class, new VersionSelector(source, requirements)::selectModVersions);
+
+		var expected = new VersionSelector(source, requirements).strategy(SelectionStrategy.CONFLICT_DRIVEN).selectModVersions();
+		assertTrue(isValid(expected, requirements));
+
+		assertEquals(expected, new PortfolioSolver(source, requirements, Runnable::run).solve());
+		assertEquals(expected, new VersionSelector(source, requirements).strategy(SelectionStrategy.PORTFOLIO).selectModVersions());
+	}
+
+	@Test
+	void selectModVersionsPortfolioFallsBackToBacktracking() throws ModLoadingException {
+		var error = new IllegalStateException("Thrown by the mod source");
+		var source = new GraphModSource() {
+			boolean thrown = false;
+
+			@Override
+			public Collection<ModInfo> availableMods(String modName) {
+				// Only the first search to ask for a mod, the conflict-driven search, fails
+				if (!thrown) {
+					thrown = true;
+					throw error;
+				}
+
+				return super.availableMods(modName);
+			}
+		}.mod("app", "1.0.0");
+
+		List<ModDependency> requirements = List.of(new AnyMod("app"));
+
+		// The backtracking search is never started by the executor, so it is run once the conflict-driven search fails
+		var selection = new PortfolioSolver(source, requirements, task -> { }).solve();
+
+		assertEquals(Set.of("app"), selection.keySet());
+	}
+
+	private static GraphModSource relaxingModSource() {
+		return new GraphModSource()
+				.mod("app", "2.0.0", requires("util", "1.0.0"), requires("lib", "2.0.0"), requires("extra", "1.0.0"))
+				.mod("app", "1.0.0", requires("lib", "1.0.0"), requires("util", "1.0.0"))
+				.mod("lib", "2.0.0", requires("util", "2.0.0"))
+				.mod("lib", "1.0.0", requires("util", "1.0.0"))
+				.mod("util", "2.0.0")
+				.mod("util", "1.1.0")
+				.mod("util", "1.0.0")
+				.mod("extra", "1.0.0");
+	}
+
+	/**
+	 * Returns a mod source that adds the name of each mod that it is asked for to a set
+	 */
+	private static GraphModSource countingModSource(Set<String> read) {
+		return new GraphModSource() {
+			@Override
+			public Collection<ModInfo> availableMods(String modName) {
+				read.add(modName);
+				return super.availableMods(modName);
+			}
+		};
+	}
+
+	private static ModInfo info(String name, String version, ModDependency... dependencies) {
+		return new GraphModSource.GraphModInfo(name, SemanticModVersion.createVersion(version), List.of(dependencies));
+	}
+
+	private static ModDependency requires(String name, String version) {
+		return new RuleModDependency(name, SemanticModVersion.createVersion(version), DependencyRules.COMPATIBLE);
+	}
+
+	private static ModDependency exactly(String name, String version) {
+		return dependency(name, version, DependencyRules.EXACTLY);
+	}
+
+	private static ModDependency dependency(String name, String version, DependencyRules rule) {
+		return new RuleModDependency(name, SemanticModVersion.createVersion(version), rule);
+	}
+
+	/**
+	 * A mod source with a dependency graph that is built in code
+	 */
+	private static class GraphModSource extends ModSource {
+		private static final class GraphModInfo extends ModInfo {
+			GraphModInfo(String name, ModVersion version, List<ModDependency> dependencies) {
+				super(name, version, name, dependencies);
+			}
+		}
+
+		private final Map<String, List<ModInfo>> mods = new HashMap<>();
+
+		GraphModSource mod(String name, String version, ModDependency... dependencies) {
+			mods.computeIfAbsent(name, unused -> new ArrayList<>()).add(info(name, version, dependencies));
+			return this;
+		}
+
+		@Override
+		public Collection<ModInfo> availableMods(String modName) {
+			return mods.getOrDefault(modName, Collections.emptyList());
+		}
+
+		@Override
+		public ModuleLayer loadLayer(ModInfo modInfo, List<ModuleLayer> parentLayers) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	private boolean isValid(Map<String, ModInfo> mods, Collection<ModDependency> requirements) {
 		var external = requirements.stream();
 		var internal = mods.values().stream().flatMap(mod -> mod.dependencies().stream());
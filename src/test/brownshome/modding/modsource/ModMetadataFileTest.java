@@ -0,0 +1,52 @@
+package brownshome.modding.modsource;
+
+import brownshome.modding.util.DependencyRules;
+import brownshome.modding.util.RuleModDependency;
+import brownshome.modding.util.SemanticModVersion;
+import brownshome.modding.util.SemanticVersionInterner;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModMetadataFileTest {
+	@Test
+	void readWrittenLines() throws IOException {
+		var contents = String.join("\n",
+				ModMetadataFile.HEADER,
+				ModMetadataFile.modLine("baseMod", "1.2.3", "base.module", "base.BaseModInfo"),
+				ModMetadataFile.requirementLine("libraryMod", "2.0.0", DependencyRules.NEWER_OR_EQUAL),
+				ModMetadataFile.requirementLine("otherMod", "0.1.0", DependencyRules.COMPATIBLE),
+				ModMetadataFile.modLine("libraryMod", "2.5.13", "library.module", "library.LibraryModInfo")) + "\n";
+
+		var mods = ModMetadataFile.read(contents, "test", new SemanticVersionInterner());
+
+		assertEquals(2, mods.size());
+
+		var baseMod = mods.get(0);
+		assertEquals("baseMod", baseMod.name());
+		assertEquals(SemanticModVersion.createVersion("1.2.3"), baseMod.version());
+		assertEquals("base.module", baseMod.moduleName());
+		assertEquals("base.BaseModInfo", ModMetadataFile.infoClass(baseMod));
+		assertEquals(List.of(
+				new RuleModDependency("libraryMod", SemanticModVersion.createVersion("2.0.0"), DependencyRules.NEWER_OR_EQUAL),
+				new RuleModDependency("otherMod", SemanticModVersion.createVersion("0.1.0"), DependencyRules.COMPATIBLE)
+		), baseMod.dependencies());
+
+		assertEquals("libraryMod", mods.get(1).name());
+		assertTrue(mods.get(1).dependencies().isEmpty());
+	}
+
+	@Test
+	void rejectMalformedFiles() {
+		var versions = new SemanticVersionInterner();
+
+		assertThrows(IOException.class, () -> ModMetadataFile.read("mod\ta\t1.0.0\ta\ta.AInfo\n", "test", versions));
+		assertThrows(IOException.class, () -> ModMetadataFile.read(ModMetadataFile.HEADER + "\nrequires\tb\t1.0.0\tCOMPATIBLE\n", "test", versions));
+		assertThrows(IOException.class, () -> ModMetadataFile.read(ModMetadataFile.HEADER + "\nmod\ta\tnot-a-version\ta\ta.AInfo\n", "test", versions));
+		assertThrows(IOException.class, () -> ModMetadataFile.read(ModMetadataFile.HEADER + "\nmod\ta\t1.0.0\ta\ta.AInfo\nrequires\tb\t1.0.0\tSOMETIMES\n", "test", versions));
+		assertThrows(IOException.class, () -> ModMetadataFile.read(ModMetadataFile.HEADER + "\nmod\ta\t1.0.0\ta\n", "test", versions));
+	}
+}
@@ -0,0 +1,52 @@
+package brownshome.modding.modsource;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathsModSourceTest {
+	@Test
+	void sourceIdentityIsThePathOfTheMod() throws IOException {
+		var first = indexedDirectory("firstMod");
+		var second = indexedDirectory("secondMod");
+
+		try {
+			var source = ModSource.fromPaths(first, second);
+			var firstMod = source.availableMods("firstMod").iterator().next();
+			var secondMod = source.availableMods("secondMod").iterator().next();
+
+			assertEquals(first.toAbsolutePath().normalize().toString(), source.sourceIdentity(firstMod));
+			assertEquals(second.toAbsolutePath().normalize().toString(), source.sourceIdentity(secondMod));
+		} finally {
+			delete(first);
+			delete(second);
+		}
+	}
+
+	/**
+	 * Creates a directory holding an index that lists a single mod
+	 */
+	private static Path indexedDirectory(String modName) throws IOException {
+		var directory = Files.createTempDirectory(modName);
+		var index = directory.resolve(ModMetadataFile.LOCATION);
+
+		Files.createDirectories(index.getParent());
+		Files.writeString(index, String.join("\n",
+				ModMetadataFile.HEADER,
+				ModMetadataFile.modLine(modName, "1.0.0", modName, modName + ".Info")) + "\n");
+
+		return directory;
+	}
+
+	private static void delete(Path directory) throws IOException {
+		try (var files = Files.walk(directory)) {
+			for (var file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+}
@@ -4,6 +4,8 @@ import brownshome.modding.ModVersion;
 import brownshome.modding.util.SemanticModVersion;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -42,6 +44,37 @@ class SemanticModVersionTest {
 		assertEquals(expected, result);
 	}
 
+	@Test
+	void parseByteBufferRange() {
+		var buffer = ByteBuffer.wrap("name=1.2.3-alpha.1+5;".getBytes(StandardCharsets.US_ASCII));
+		var result = SemanticModVersion.parse(buffer, 5, 20);
+
+		assertEquals(new SemanticModVersion(1, 2, 3, "alpha.1", "5"), result);
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	void parseInvalidVersions() {
+		for (var invalid : List.of("", "1", "1.2", "1.2.", "1..3", "1.2.3-", "1.2.3+", "1.2.3+a+b", "1.2.3_4", "1.2.99999999999", "01.2.3", "1.02.3", "1.2.03", "1.2.3-alpha.01", "1.2.3-00", "1.0.0-a..b", "1.0.0-alpha.", "1.0.0+a..b")) {
+			assertThrows(IllegalArgumentException.class, () -> SemanticModVersion.createVersion(invalid), invalid);
+		}
+	}
+
+	@Test
+	void parseZeroIdentifiers() {
+		assertEquals(new SemanticModVersion(0, 0, 0, "0.0a.alpha-01", "01"), SemanticModVersion.createVersion("0.0.0-0.0a.alpha-01+01"));
+	}
+
+	@Test
+	void internSharesEqualVersions() {
+		var interner = new SemanticVersionInterner();
+		var first = interner.parse("1.2.3-beta");
+		var second = interner.parse(new StringBuilder("v1.2.3-beta"), 1, 11);
+
+		assertSame(first, second);
+		assertEquals(1, interner.size());
+	}
+
 	@Test
 	void isAPICompatibleWithSelf() {
 		var self = new SemanticModVersion(1, 0, 0, "alpha");
@@ -130,6 +163,29 @@ class SemanticModVersionTest {
 		}
 	}
 
+	@Test
+	void compareToLargeNumericIdentifiers() {
+		var versionStrings = List.of(
+				"1.0.0-alpha.-99999999999999999999",
+				"1.0.0-alpha.2",
+				"1.0.0-alpha.9223372036854775807",
+				"1.0.0-alpha.99999999999999999999",
+				"1.0.0-alpha.99999999999999999999.1",
+				"1.0.0-alpha.beta"
+		);
+
+		var versions = versionStrings.stream()
+				.map(SemanticModVersion::createVersion)
+				.collect(Collectors.toList());
+
+		for (int i = 0; i < versions.size(); i++) {
+			for (int j = 0; j < versions.size(); j++) {
+				assertEquals(Integer.compare(i, j), Integer.signum(versions.get(i).compareTo(versions.get(j))),
+						String.format("%s <=> %s", versions.get(i), versions.get(j)));
+			}
+		}
+	}
+
 	@Test
 	void matchesWithDifferingBuild() {
 		var self = new SemanticModVersion(1, 0, 0, "alpha", "z45");
@@ -0,0 +1,64 @@
+package brownshome.modding.util;
+
+import brownshome.modding.ModVersion;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionRangeTest {
+	private static final List<ModVersion> VERSIONS = List.of(
+			SemanticModVersion.createVersion("2.0.0"),
+			SemanticModVersion.createVersion("1.3.0"),
+			SemanticModVersion.createVersion("1.3.0-beta"),
+			SemanticModVersion.createVersion("1.2.1"),
+			SemanticModVersion.createVersion("1.2.0"),
+			SemanticModVersion.createVersion("0.1.0")
+	);
+
+	@Test
+	void rangeMatchesRule() {
+		var required = SemanticModVersion.createVersion("1.2.5");
+
+		for (var rule : DependencyRules.values()) {
+			var range = rule.range(required);
+
+			for (var version : VERSIONS) {
+				assertEquals(rule.meets(required, version), range.contains(version), rule + " " + version);
+			}
+		}
+	}
+
+	@Test
+	void exactlyMatchesNumericIdentifiers() {
+		var required = new SemanticModVersion(1, 0, 0, "alpha.01");
+		var version = SemanticModVersion.createVersion("1.0.0-alpha.1");
+
+		assertTrue(DependencyRules.EXACTLY.meets(required, version));
+		assertTrue(DependencyRules.EXACTLY.range(required).contains(version));
+	}
+
+	@Test
+	void intersect() {
+		var range = VersionRange.atLeast(SemanticModVersion.createVersion("1.2.1"))
+				.intersect(VersionRange.below(SemanticModVersion.createVersion("2.0.0")))
+				.intersect(VersionRange.except(SemanticModVersion.createVersion("1.3.0-beta")));
+
+		var matching = range.matching(VERSIONS);
+
+		assertEquals(2, matching.cardinality());
+		assertTrue(matching.get(1));
+		assertTrue(matching.get(3));
+	}
+
+	@Test
+	void isEmpty() {
+		var version = SemanticModVersion.createVersion("1.0.0");
+
+		assertTrue(VersionRange.above(version).intersect(VersionRange.below(version)).isEmpty());
+		assertTrue(VersionRange.exactly(version).intersect(VersionRange.except(version)).isEmpty());
+		assertTrue(VersionRange.exactly(SemanticModVersion.createVersion("1.0.0-alpha")).releasesOnly().isEmpty());
+		assertFalse(VersionRange.atLeast(version).intersect(VersionRange.atMost(version)).isEmpty());
+	}
+}